@@ -0,0 +1,215 @@
+/*
+ * JfrTaskEvents.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Java Flight Recorder implementation of TaskEvents.
+ *
+ * Built separately from the main sources, see the jfr source set in
+ * build.gradle, as jdk.jfr requires Java 8u262 or later. Each event is
+ * only populated and committed when its event type is enabled in the
+ * active recording, e.g. -XX:StartFlightRecording or jcmd JFR.start.
+ */
+package com.revo.deployr.rbroker.example.jfr;
+
+import com.revo.deployr.rbroker.example.util.TaskEvents;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+public class JfrTaskEvents extends TaskEvents {
+
+    private static final EventType TASK_COMPLETED =
+                    EventType.getEventType(TaskCompletedEvent.class);
+    private static final EventType TASK_FAILED =
+                    EventType.getEventType(TaskFailedEvent.class);
+    private static final EventType MESSAGE_PUBLISHED =
+                    EventType.getEventType(MessagePublishedEvent.class);
+
+    @Override
+    public boolean isEnabled() {
+        return TASK_COMPLETED.isEnabled() || TASK_FAILED.isEnabled();
+    }
+
+    @Override
+    public void taskBuilt(int accounts, int balance,
+                          int transactions, int credit) {
+
+        TaskBuiltEvent event = new TaskBuiltEvent();
+        if(event.shouldCommit()) {
+            event.accounts = accounts;
+            event.balance = balance;
+            event.transactions = transactions;
+            event.credit = credit;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void taskSubmitted(int outstandingTasks) {
+
+        TaskSubmittedEvent event = new TaskSubmittedEvent();
+        if(event.shouldCommit()) {
+            event.outstandingTasks = outstandingTasks;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void taskCompleted(int accounts, int balance,
+                              int transactions, int credit,
+                              long timeOnCode, long timeOnServer,
+                              long timeOnCall, long queueWait) {
+
+        TaskCompletedEvent event = new TaskCompletedEvent();
+        if(event.shouldCommit()) {
+            event.accounts = accounts;
+            event.balance = balance;
+            event.transactions = transactions;
+            event.credit = credit;
+            event.timeOnCode = timeOnCode;
+            event.timeOnServer = timeOnServer;
+            event.timeOnCall = timeOnCall;
+            event.queueWait = queueWait;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void taskFailed(int accounts, int balance,
+                           int transactions, int credit,
+                           String cause) {
+
+        TaskFailedEvent event = new TaskFailedEvent();
+        if(event.shouldCommit()) {
+            event.accounts = accounts;
+            event.balance = balance;
+            event.transactions = transactions;
+            event.credit = credit;
+            event.cause = cause;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void poolBuilt(int requestedPoolSize, int allocatedPoolSize,
+                          boolean resize, long buildTime) {
+
+        PoolBuiltEvent event = new PoolBuiltEvent();
+        if(event.shouldCommit()) {
+            event.requestedPoolSize = requestedPoolSize;
+            event.allocatedPoolSize = allocatedPoolSize;
+            event.resize = resize;
+            event.buildTime = buildTime;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object publishStarted() {
+
+        if(!MESSAGE_PUBLISHED.isEnabled()) {
+            return null;
+        }
+        MessagePublishedEvent event = new MessagePublishedEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void messagePublished(Object publish, String msgType, int scores) {
+
+        MessagePublishedEvent event = (MessagePublishedEvent) publish;
+        event.end();
+        if(event.shouldCommit()) {
+            event.msgType = msgType;
+            event.scores = scores;
+            event.commit();
+        }
+    }
+
+    /*
+     * Event types.
+     */
+
+    @Name("com.revo.deployr.rbroker.example.TaskBuilt")
+    @Label("RTask Built")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class TaskBuiltEvent extends Event {
+        @Label("Accounts") int accounts;
+        @Label("Balance") int balance;
+        @Label("Transactions") int transactions;
+        @Label("Credit") int credit;
+    }
+
+    @Name("com.revo.deployr.rbroker.example.TaskSubmitted")
+    @Label("RTask Submitted")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class TaskSubmittedEvent extends Event {
+        @Label("Outstanding Tasks") int outstandingTasks;
+    }
+
+    @Name("com.revo.deployr.rbroker.example.TaskCompleted")
+    @Label("RTask Completed")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class TaskCompletedEvent extends Event {
+        @Label("Accounts") int accounts;
+        @Label("Balance") int balance;
+        @Label("Transactions") int transactions;
+        @Label("Credit") int credit;
+        @Label("Time On Code") @Timespan(Timespan.MILLISECONDS) long timeOnCode;
+        @Label("Time On Server") @Timespan(Timespan.MILLISECONDS) long timeOnServer;
+        @Label("Time On Call") @Timespan(Timespan.MILLISECONDS) long timeOnCall;
+        @Label("Queue Wait") @Timespan(Timespan.MILLISECONDS) long queueWait;
+    }
+
+    @Name("com.revo.deployr.rbroker.example.TaskFailed")
+    @Label("RTask Failed")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class TaskFailedEvent extends Event {
+        @Label("Accounts") int accounts;
+        @Label("Balance") int balance;
+        @Label("Transactions") int transactions;
+        @Label("Credit") int credit;
+        @Label("Cause") String cause;
+    }
+
+    @Name("com.revo.deployr.rbroker.example.PoolBuilt")
+    @Label("RBroker Pool Built")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class PoolBuiltEvent extends Event {
+        @Label("Requested Pool Size") int requestedPoolSize;
+        @Label("Allocated Pool Size") int allocatedPoolSize;
+        @Label("Resize") boolean resize;
+        @Label("Build Time") @Timespan(Timespan.MILLISECONDS) long buildTime;
+    }
+
+    @Name("com.revo.deployr.rbroker.example.MessagePublished")
+    @Label("STOMP Message Published")
+    @Category({ "DeployR", "Fraud Score" })
+    @StackTrace(false)
+    static class MessagePublishedEvent extends Event {
+        @Label("Message Type") String msgType;
+        @Label("Scores") int scores;
+    }
+}
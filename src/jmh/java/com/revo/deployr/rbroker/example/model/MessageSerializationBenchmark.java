@@ -0,0 +1,90 @@
+/*
+ * MessageSerializationBenchmark.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * JMH benchmarks for the JSON serialization of STOMP messages, using
+ * the MappingJackson2MessageConverter applied by convertAndSend.
+ *
+ * Usage: gradlew jmh -Pbenchmarks=MessageSerialization
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class MessageSerializationBenchmark {
+
+    private MappingJackson2MessageConverter converter;
+    private FraudScore fraudScore;
+    private RuntimeStats runtimeStats;
+
+    @Setup
+    public void setup() {
+
+        converter = new MappingJackson2MessageConverter();
+
+        fraudScore = new FraudScore();
+        fraudScore.balance = 12500;
+        fraudScore.transactions = 50;
+        fraudScore.credit = 37;
+        fraudScore.score = 0.42;
+        fraudScore.success = true;
+
+        runtimeStats = new RuntimeStats();
+        runtimeStats.endpoint = "http://localhost:8050/deployr";
+        runtimeStats.username = "testuser";
+        runtimeStats.requestedPoolSize = 10;
+        runtimeStats.allocatedPoolSize = 10;
+        runtimeStats.maxConcurrency = 10;
+        runtimeStats.submittedTasks = 1000L;
+        runtimeStats.successfulTasks = 990L;
+        runtimeStats.failedTasks = 10L;
+        runtimeStats.codeExecutionPercentiles = percentiles(12);
+        runtimeStats.serverOverheadPercentiles = percentiles(6);
+        runtimeStats.networkLatencyPercentiles = percentiles(7);
+    }
+
+    @Benchmark
+    public Message<?> serializeFraudScore() {
+        return converter.toMessage(fraudScore, null);
+    }
+
+    @Benchmark
+    public Message<?> serializeRuntimeStats() {
+        return converter.toMessage(runtimeStats, null);
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static LatencyPercentiles percentiles(long p50) {
+        LatencyPercentiles percentiles = new LatencyPercentiles();
+        percentiles.p50 = p50;
+        percentiles.p90 = 2 * p50;
+        percentiles.p99 = 4 * p50;
+        percentiles.p999 = 8 * p50;
+        return percentiles;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * BenchmarkTaskResult.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Fixed, successful POOLED RTaskResult scoring a single account.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.client.broker.RTaskResult;
+import com.revo.deployr.client.broker.RTaskType;
+import com.revo.deployr.client.data.RData;
+import com.revo.deployr.client.factory.RDataFactory;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+public class BenchmarkTaskResult implements RTaskResult {
+
+    private final List<RData> generatedObjects =
+        Collections.singletonList(
+            (RData) RDataFactory.createNumeric("x", 0.42));
+
+    public String getID() {
+        return "benchmark";
+    }
+
+    public RTaskType getType() {
+        return RTaskType.POOLED;
+    }
+
+    public boolean isSuccess() {
+        return true;
+    }
+
+    public String getFailure() {
+        return null;
+    }
+
+    public long getTimeOnCode() {
+        return 12L;
+    }
+
+    public long getTimeOnServer() {
+        return 18L;
+    }
+
+    public long getTimeOnCall() {
+        return 25L;
+    }
+
+    public List<URL> getGeneratedPlots() {
+        return Collections.emptyList();
+    }
+
+    public List<URL> getGeneratedFiles() {
+        return Collections.emptyList();
+    }
+
+    public List<RData> getGeneratedObjects() {
+        return generatedObjects;
+    }
+
+    public List<URL> getStoredFiles() {
+        return Collections.emptyList();
+    }
+}
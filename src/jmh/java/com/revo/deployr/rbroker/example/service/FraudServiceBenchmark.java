@@ -0,0 +1,104 @@
+/*
+ * FraudServiceBenchmark.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * JMH benchmarks for the per-RTask hot path of FraudService.
+ *
+ * Runs without a DeployR server: RTasks are only built, never submitted,
+ * and results are supplied by BenchmarkTaskResult. printRTaskResult runs
+ * under the shipped log4j.properties.
+ *
+ * Usage: gradlew jmh [-Pbenchmarks=regexp]
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+import com.revo.deployr.rbroker.example.model.RuntimeStats;
+import com.revo.deployr.rbroker.example.util.RBrokerStatsHelper;
+
+import com.revo.deployr.client.broker.RBrokerRuntimeStats;
+import com.revo.deployr.client.broker.RTask;
+import com.revo.deployr.client.broker.RTaskResult;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g",
+                                   "-Drepository-script=ccFraudScore.R",
+                                   "-Drepository-directory=example-fraud-score",
+                                   "-Dusername=testuser" })
+@State(Scope.Benchmark)
+public class FraudServiceBenchmark {
+
+    private FraudService fraudService;
+    private RTask rTask;
+    private RTaskResult rTaskResult;
+    private RBrokerRuntimeStats brokerStats;
+
+    @Setup
+    public void setup() throws Exception {
+
+        fraudService = new FraudService(null, null);
+        fraudService.setBrokerConfig(FraudService.buildBrokerConfig(1));
+
+        /*
+         * Fill the latency histograms, so the percentile cost matches
+         * a service that has been under load for a window.
+         */
+        Random random = new Random(42);
+        for(int i=0; i<10000; i++) {
+            fraudService.recordTimings(random.nextInt(200),
+                                       random.nextInt(200),
+                                       random.nextInt(200));
+        }
+
+        rTask = fraudService.buildTask(12500, 50, 37);
+        rTaskResult = new BenchmarkTaskResult();
+
+        brokerStats = new RBrokerRuntimeStats();
+        brokerStats.totalTasksRun = 1000L;
+        brokerStats.totalTasksRunToSuccess = 990L;
+        brokerStats.totalTasksRunToFailure = 10L;
+        brokerStats.totalTimeTasksOnCode = 12000L;
+        brokerStats.totalTimeTasksOnServer = 18000L;
+        brokerStats.totalTimeTasksOnCall = 25000L;
+    }
+
+    @Benchmark
+    public RTask buildTask() {
+        return fraudService.buildTask();
+    }
+
+    @Benchmark
+    public FraudScore buildFraudScore() {
+        return fraudService.buildFraudScore(rTask, rTaskResult);
+    }
+
+    @Benchmark
+    public RuntimeStats populateRuntimeStats() {
+        return fraudService.populateRuntimeStats(new RuntimeStats(),
+                                                 brokerStats);
+    }
+
+    @Benchmark
+    public void printRTaskResult() {
+        RBrokerStatsHelper.printRTaskResult(rTask, rTaskResult, null);
+    }
+}
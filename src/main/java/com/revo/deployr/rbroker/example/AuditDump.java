@@ -0,0 +1,187 @@
+/*
+ * AuditDump.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Prints the TaskAudit segments in -Daudit.dir as text, one line per
+ * audited account, oldest first:
+ *
+ * sequence timestamp outcome balance transactions credit accounts score
+ * code server call cause
+ *
+ * With -Daudit.failures=true only failed accounts are printed.
+ *
+ * Usage: gradlew auditDump -Paudit=audit
+ */
+package com.revo.deployr.rbroker.example;
+
+import com.revo.deployr.rbroker.example.util.TaskAudit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import org.apache.log4j.Logger;
+
+public class AuditDump {
+
+    private static Logger log = Logger.getLogger(AuditDump.class);
+
+    private static final String[] OUTCOMES =
+                                new String[] { "OK", "FAILED", "ERROR" };
+
+    public static void main(String[] args) throws Exception {
+
+        File directory = new File(System.getProperty("audit.dir", "audit"));
+        boolean failuresOnly = Boolean.getBoolean("audit.failures");
+
+        File[] files = directory.listFiles();
+        if(files == null) {
+            log.warn("No audit directory found at " + directory + ".");
+            return;
+        }
+
+        /*
+         * Each segment holds at most two runs of ascending sequences,
+         * the records of the current lap, then the tail of the previous
+         * lap not yet overwritten. Runs are printed in sequence order,
+         * so the tail of the segment being overwritten, which holds the
+         * oldest records, is printed first.
+         */
+        List<Run> runs = new ArrayList<Run>();
+        int segments = 0;
+        for(File file : files) {
+            if(TaskAudit.isSegmentFile(file)) {
+                findRuns(file, runs);
+                segments++;
+            }
+        }
+        Collections.sort(runs, new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                return (a.first < b.first) ? -1 :
+                                    ((a.first == b.first) ? 0 : 1);
+            }
+        });
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        SimpleDateFormat format =
+                        new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        long printed = 0;
+
+        for(Run run : runs) {
+
+            MappedByteBuffer mapped = run.mapped;
+            for(int start=run.start; start<run.end;
+                                            start += TaskAudit.RECORD_SIZE) {
+
+                long sequence = mapped.getLong(start);
+
+                byte outcome = mapped.get(start + 52);
+                if(failuresOnly && outcome == TaskAudit.OK) {
+                    continue;
+                }
+
+                int causeLength = mapped.get(start + 53) & 0xff;
+                byte[] cause = new byte[causeLength];
+                for(int i=0; i<causeLength; i++) {
+                    cause[i] = mapped.get(start + TaskAudit.CAUSE_OFFSET + i);
+                }
+
+                out.write(sequence + " " +
+                    format.format(new Date(mapped.getLong(start + 8))) + " " +
+                    ((outcome >= 0 && outcome < OUTCOMES.length) ?
+                                OUTCOMES[outcome] : String.valueOf(outcome)) +
+                    " " + mapped.getInt(start + 16) +
+                    " " + mapped.getInt(start + 20) +
+                    " " + mapped.getInt(start + 24) +
+                    " " + mapped.getInt(start + 28) +
+                    " " + ((outcome == TaskAudit.OK) ?
+                           String.valueOf(mapped.getDouble(start + 32)) : "-") +
+                    " " + mapped.getInt(start + 40) +
+                    " " + mapped.getInt(start + 44) +
+                    " " + mapped.getInt(start + 48) +
+                    ((causeLength > 0) ?
+                        " " + new String(cause, "UTF-8") : "") + "\n");
+                printed++;
+            }
+        }
+
+        out.flush();
+        log.info("Printed " + printed + " audit record(s) from " +
+                 segments + " segment(s) in " + directory + ".");
+    }
+
+    /*
+     * A run of records with ascending sequences within a segment.
+     */
+    private static class Run {
+        final MappedByteBuffer mapped;
+        final int start;
+        final int end;
+        final long first;
+
+        Run(MappedByteBuffer mapped, int start, int end) {
+            this.mapped = mapped;
+            this.start = start;
+            this.end = end;
+            this.first = mapped.getLong(start);
+        }
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    /*
+     * Adds the runs of segment to runs, ending at the first record
+     * never written.
+     */
+    private static void findRuns(File segment, List<Run> runs)
+                                                    throws Exception {
+
+        RandomAccessFile file = new RandomAccessFile(segment, "r");
+        MappedByteBuffer mapped;
+        try {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                           0, file.length());
+        } finally {
+            file.close();
+        }
+
+        int runStart = 0;
+        int start = 0;
+        long previous = 0;
+        for(; start + TaskAudit.RECORD_SIZE <= mapped.limit();
+                                        start += TaskAudit.RECORD_SIZE) {
+
+            long sequence = mapped.getLong(start);
+            if(sequence <= 0) {
+                break;
+            }
+            if(sequence <= previous) {
+                runs.add(new Run(mapped, runStart, start));
+                runStart = start;
+            }
+            previous = sequence;
+        }
+
+        if(start > runStart) {
+            runs.add(new Run(mapped, runStart, start));
+        }
+    }
+}
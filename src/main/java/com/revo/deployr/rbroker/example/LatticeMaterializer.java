@@ -0,0 +1,223 @@
+/*
+ * LatticeMaterializer.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Offline job that sweeps the entire fraud model input domain through
+ * an RBroker pool and materializes the scores into a ScoreLattice file.
+ *
+ * Each balance is scored as a single vectorized RTask covering every
+ * (transactions, credit) pair. Balances already present in an existing
+ * lattice file computed from the same model are skipped, so an
+ * interrupted sweep resumes where it left off. Written slabs are forced
+ * to disk, and only then marked complete, once every 1000 slabs.
+ *
+ * Usage: gradlew materialize
+ */
+package com.revo.deployr.rbroker.example;
+
+import com.revo.deployr.rbroker.example.service.FraudService;
+import com.revo.deployr.rbroker.example.service.ScoreLattice;
+
+import com.revo.deployr.client.broker.*;
+import com.revo.deployr.client.broker.options.*;
+import com.revo.deployr.client.broker.task.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.RTaskFactory;
+import com.revo.deployr.client.factory.RDataFactory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+public class LatticeMaterializer implements RTaskListener {
+
+    private static Logger log = Logger.getLogger(LatticeMaterializer.class);
+
+    /*
+     * Inputs shared by every slab RTask, the balance vector varies.
+     */
+    private static final List<Double> TRANS_VECTOR;
+    private static final List<Double> CREDIT_VECTOR;
+
+    static {
+        List<Double> trans = new ArrayList<Double>(ScoreLattice.SLAB_SIZE);
+        List<Double> credit = new ArrayList<Double>(ScoreLattice.SLAB_SIZE);
+        for(int t=0; t<ScoreLattice.TRANSACTIONS; t++) {
+            for(int c=0; c<ScoreLattice.CREDITS; c++) {
+                trans.add((double) t);
+                credit.add((double) c);
+            }
+        }
+        TRANS_VECTOR = Collections.unmodifiableList(trans);
+        CREDIT_VECTOR = Collections.unmodifiableList(credit);
+    }
+
+    private final ScoreLattice lattice;
+    private final Semaphore inFlight;
+    private final CountDownLatch remaining;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private LatticeMaterializer(ScoreLattice lattice,
+                                int maxInFlight,
+                                int pendingSlabs) {
+        this.lattice = lattice;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.remaining = new CountDownLatch(pendingSlabs);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        File latticeFile =
+            new File(System.getProperty("lattice.file", "fraudScore.lattice"));
+        File modelFile =
+            new File(System.getProperty("lattice.model",
+                                        "analytics/fraudModel.rData"));
+        int poolSize = Integer.getInteger("poolsize", 1);
+
+        ScoreLattice lattice = ScoreLattice.openForWrite(latticeFile,
+                                    ScoreLattice.fingerprint(modelFile));
+
+        int pendingSlabs = ScoreLattice.BALANCES - lattice.completedSlabs();
+        log.info("Materializing " + latticeFile + ", " + pendingSlabs +
+                 " of " + ScoreLattice.BALANCES + " balance slab(s) pending.");
+
+        if(pendingSlabs == 0) {
+            lattice.close();
+            return;
+        }
+
+        RBroker rBroker = FraudService.buildBroker(
+                                FraudService.buildBrokerConfig(poolSize));
+
+        /*
+         * Keep every R session busy while bounding the number of
+         * slab RTasks queued on the RBroker.
+         */
+        LatticeMaterializer materializer =
+            new LatticeMaterializer(lattice, 2 * rBroker.maxConcurrency(),
+                                    pendingSlabs);
+        rBroker.addTaskListener(materializer);
+
+        try {
+
+            for(int balance=0; balance<ScoreLattice.BALANCES; balance++) {
+                if(!lattice.isSlabComplete(balance)) {
+                    materializer.inFlight.acquire();
+                    try {
+                        rBroker.submit(buildSlabTask(balance));
+                    } catch(Exception ex) {
+                        materializer.onTaskError(null, ex);
+                    }
+                }
+            }
+
+            materializer.remaining.await();
+
+        } finally {
+            lattice.force();
+            lattice.close();
+            rBroker.shutdown();
+        }
+
+        log.info("Materialized " + materializer.completed.get() +
+                 " balance slab(s), " + materializer.failed.get() +
+                 " failed.");
+        if(materializer.failed.get() > 0) {
+            log.warn("Re-run to resume materializing the failed slab(s).");
+        }
+    }
+
+    /*
+     * RBroker RTaskListener Implementation.
+     */
+
+    public void onTaskCompleted(RTask rTask, RTaskResult rTaskResult) {
+
+        try {
+
+            if(rTaskResult.isSuccess()) {
+
+                List<Double> scores = ((RNumericVector)
+                    rTaskResult.getGeneratedObjects().get(0)).getValue();
+
+                double[] slab = new double[ScoreLattice.SLAB_SIZE];
+                for(int i=0; i<slab.length; i++) {
+                    slab[i] = scores.get(i);
+                }
+
+                int balance = slabBalance(rTask);
+                lattice.writeSlab(balance, slab);
+
+                if(completed.incrementAndGet() % 1000 == 0) {
+                    lattice.force();
+                    log.info("Materialized " + completed.get() +
+                             " balance slab(s).");
+                }
+
+            } else {
+                failed.incrementAndGet();
+                log.warn("Slab RTask failed: cause=" +
+                                                rTaskResult.getFailure());
+            }
+
+        } catch(Exception ex) {
+            failed.incrementAndGet();
+            log.warn("LatticeMaterializer: onTaskCompleted ex=" + ex);
+        } finally {
+            inFlight.release();
+            remaining.countDown();
+        }
+    }
+
+    public void onTaskError(RTask rTask, Throwable throwable) {
+        failed.incrementAndGet();
+        log.warn("Slab RTask failed: cause=" + throwable);
+        inFlight.release();
+        remaining.countDown();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static RTask buildSlabTask(int balance) {
+
+        PooledTaskOptions taskOptions = new PooledTaskOptions();
+        taskOptions.routputs = Arrays.asList("x");
+
+        List<Double> balVector =
+            Collections.nCopies(ScoreLattice.SLAB_SIZE, (double) balance);
+
+        taskOptions.rinputs = Arrays.asList(
+            (RData) RDataFactory.createNumericVector("bal", balVector),
+            (RData) RDataFactory.createNumericVector("trans", TRANS_VECTOR),
+            (RData) RDataFactory.createNumericVector("credit", CREDIT_VECTOR)
+        );
+
+        return RTaskFactory.pooledTask(System.getProperty("repository-script"),
+                                       System.getProperty("repository-directory"),
+                                       System.getProperty("username"),
+                                       null, taskOptions);
+    }
+
+    private static int slabBalance(RTask rTask) {
+        List<RData> rinputs =
+            ((PooledTaskOptions)((PooledTask)rTask).options).rinputs;
+        return ((RNumericVector) rinputs.get(0)).getValue().get(0).intValue();
+    }
+}
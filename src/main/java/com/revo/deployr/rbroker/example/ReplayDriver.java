@@ -0,0 +1,323 @@
+/*
+ * ReplayDriver.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Open-loop load driver that replays recorded scoring requests against
+ * GET:/fraud/score/{bal}/{trans}/{credit} on a running example server.
+ *
+ * Each line of the replay file is a JSON record of one request:
+ *
+ * {"timestamp":1408000000000,"balance":1200,"transactions":3,"credit":20}
+ *
+ * Requests are issued at their original arrival times, scaled by
+ * -Dreplay.speed, or at a fixed -Dreplay.rate per second, regardless of
+ * how quickly earlier requests complete. Response times are measured from
+ * each intended send time, so a stalled server is charged for the requests
+ * it delayed (coordinated omission correction), and service times from
+ * the actual send time are reported alongside.
+ *
+ * Usage: gradlew replay -Preplay=requests.jsonl
+ */
+package com.revo.deployr.rbroker.example;
+
+import com.revo.deployr.rbroker.example.util.LatencyHistogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class ReplayDriver {
+
+    private static Logger log = Logger.getLogger(ReplayDriver.class);
+
+    private static final double[] PERCENTILES =
+                                    new double[] { 50, 90, 99, 99.9, 100 };
+
+    /*
+     * A single recorded request, offset is the intended send time in
+     * nanoseconds relative to the start of the replay.
+     */
+    private static class Request {
+        final long offset;
+        final int balance;
+        final int transactions;
+        final int credit;
+
+        Request(long offset, int balance, int transactions, int credit) {
+            this.offset = offset;
+            this.balance = balance;
+            this.transactions = transactions;
+            this.credit = credit;
+        }
+    }
+
+    private final String target;
+    private final int timeoutMillis;
+
+    /*
+     * Whole-run histograms, in microseconds.
+     */
+    private final LatencyHistogram responseTimes =
+                            new LatencyHistogram(Long.MAX_VALUE, 1);
+    private final LatencyHistogram serviceTimes =
+                            new LatencyHistogram(Long.MAX_VALUE, 1);
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private ReplayDriver(String target, int timeoutMillis) {
+        this.target = target;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        File replayFile =
+            new File(System.getProperty("replay.file", "requests.jsonl"));
+        String target = System.getProperty("replay.target",
+                                           "http://localhost:9080");
+        double speed = Double.parseDouble(
+                            System.getProperty("replay.speed", "1.0"));
+        double rate = Double.parseDouble(
+                            System.getProperty("replay.rate", "0"));
+        int threads = Integer.getInteger("replay.threads", 256);
+        int timeoutMillis = Integer.getInteger("replay.timeout", 30000);
+
+        List<Request> requests = load(replayFile, speed, rate);
+        if(requests.isEmpty()) {
+            log.warn("No scoring requests found in " + replayFile + ".");
+            return;
+        }
+
+        log.info("Replaying " + requests.size() + " request(s) from " +
+                 replayFile + " against " + target + ", " +
+                 ((rate > 0) ? ("fixed rate " + rate + "/s.") :
+                               ("speed x" + speed + ".")));
+
+        ReplayDriver driver = new ReplayDriver(target, timeoutMillis);
+        driver.run(requests, threads);
+    }
+
+    /*
+     * Parses the replay file, records without the account inputs are
+     * skipped. Timestamps are optional with a fixed rate.
+     */
+    private static List<Request> load(File replayFile,
+                                      double speed,
+                                      double rate) throws Exception {
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<Request> requests = new ArrayList<Request>();
+        BufferedReader reader = new BufferedReader(new FileReader(replayFile));
+        long skipped = 0;
+        long firstTimestamp = -1;
+
+        try {
+
+            String line;
+            while((line = reader.readLine()) != null) {
+
+                if(line.trim().length() == 0) {
+                    continue;
+                }
+
+                JsonNode record;
+                try {
+                    record = mapper.readTree(line);
+                } catch(Exception ex) {
+                    skipped++;
+                    continue;
+                }
+
+                if(record == null || !record.has("balance") ||
+                   !record.has("transactions") || !record.has("credit") ||
+                   (rate <= 0 && !record.has("timestamp"))) {
+                    skipped++;
+                    continue;
+                }
+
+                long offset;
+                if(rate > 0) {
+                    offset = (long) (requests.size() * 1e9 / rate);
+                } else {
+                    long timestamp = record.get("timestamp").asLong();
+                    if(firstTimestamp < 0) {
+                        firstTimestamp = timestamp;
+                    }
+                    offset = (long) ((timestamp - firstTimestamp) *
+                                                        1e6 / speed);
+                }
+
+                requests.add(new Request(Math.max(0, offset),
+                                         record.get("balance").asInt(),
+                                         record.get("transactions").asInt(),
+                                         record.get("credit").asInt()));
+            }
+
+        } finally {
+            reader.close();
+        }
+
+        if(skipped > 0) {
+            log.warn("Skipped " + skipped + " record(s) in " + replayFile +
+                     " without scoring request inputs.");
+        }
+
+        /*
+         * Recordings may be out of order, issue in arrival order.
+         */
+        Collections.sort(requests, new Comparator<Request>() {
+            public int compare(Request a, Request b) {
+                return (a.offset < b.offset) ? -1 :
+                            ((a.offset == b.offset) ? 0 : 1);
+            }
+        });
+        return requests;
+    }
+
+    private void run(List<Request> requests, int threads) throws Exception {
+
+        ExecutorService senders = Executors.newFixedThreadPool(threads);
+        final CountDownLatch remaining = new CountDownLatch(requests.size());
+        long start = System.nanoTime();
+
+        for(final Request request : requests) {
+
+            final long intended = start + request.offset;
+            long delay = intended - System.nanoTime();
+            if(delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+
+            /*
+             * Open loop, the next request is never held back by this one.
+             * Any wait for a free sender thread counts against response time.
+             */
+            senders.execute(new Runnable() {
+                public void run() {
+                    try {
+                        send(request, intended);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            });
+        }
+
+        remaining.await();
+        long elapsed = System.nanoTime() - start;
+        senders.shutdown();
+
+        report(requests.size(), elapsed);
+    }
+
+    private void send(Request request, long intended) {
+
+        long sent = System.nanoTime();
+        int status = -1;
+
+        try {
+
+            URL url = new URL(target + "/fraud/score/" + request.balance +
+                              "/" + request.transactions + "/" +
+                              request.credit);
+            HttpURLConnection connection =
+                                (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+
+            status = connection.getResponseCode();
+            InputStream in = (status < 400) ?
+                    connection.getInputStream() : connection.getErrorStream();
+            if(in != null) {
+                byte[] discard = new byte[1024];
+                while(in.read(discard) != -1) {}
+                in.close();
+            }
+
+        } catch(Exception ex) {
+            log.debug("ReplayDriver: send ex=" + ex);
+        }
+
+        long completed = System.nanoTime();
+        responseTimes.record((completed - intended) / 1000L);
+        serviceTimes.record((completed - sent) / 1000L);
+
+        if(status >= 200 && status < 300) {
+            succeeded.incrementAndGet();
+        } else
+        if(status == 429) {
+            shed.incrementAndGet();
+        } else
+        if(status == 504) {
+            timedOut.incrementAndGet();
+        } else
+        if(status > 0) {
+            failed.incrementAndGet();
+        } else {
+            errors.incrementAndGet();
+        }
+    }
+
+    private void report(int total, long elapsedNanos) {
+
+        double seconds = elapsedNanos / 1e9;
+
+        log.info("Replay Summary");
+        log.info("Replay: Requests [ " + total + " ] in [ " +
+                 String.format("%.1f", seconds) + "s ]");
+        log.info("Replay: Throughput [ " +
+                 String.format("%.1f", total / seconds) + " /s ] Ok [ " +
+                 String.format("%.1f", succeeded.get() / seconds) + " /s ]");
+        log.info("Replay: Ok [ " + succeeded.get() +
+                 " ] Shed(429) [ " + rate(shed.get(), total) +
+                 " ] Timeout(504) [ " + rate(timedOut.get(), total) +
+                 " ] Failed [ " + rate(failed.get(), total) +
+                 " ] Error [ " + rate(errors.get(), total) + " ]");
+        log.info("Replay: Response Time ms (corrected) " +
+                 percentiles(responseTimes));
+        log.info("Replay: Service Time ms (uncorrected) " +
+                 percentiles(serviceTimes));
+    }
+
+    private static String rate(long count, int total) {
+        return count + " (" +
+               String.format("%.2f", 100.0 * count / total) + "%)";
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+
+        long[] values = histogram.percentiles(PERCENTILES);
+        return String.format(
+            "[ p50 : %.1f , p90 : %.1f , p99 : %.1f , p99.9 : %.1f , max : %.1f ]",
+            values[0] / 1000.0, values[1] / 1000.0, values[2] / 1000.0,
+            values[3] / 1000.0, values[4] / 1000.0);
+    }
+}
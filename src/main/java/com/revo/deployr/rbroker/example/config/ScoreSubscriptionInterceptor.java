@@ -0,0 +1,107 @@
+/*
+ * ScoreSubscriptionInterceptor.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Client inbound channel interceptor that tracks /topic/fraud
+ * subscriptions in ScoreSubscriptions.
+ *
+ * A SUBSCRIBE to /topic/fraud carrying ScoreFilter headers, or an
+ * "encoding: binary" header, is rewritten to the canonical destination
+ * of its filter and encoding before it reaches the SimpleBroker, so the
+ * client only receives messages published there.
+ */
+package com.revo.deployr.rbroker.example.config;
+
+import com.revo.deployr.rbroker.example.service.ScoreFilter;
+import com.revo.deployr.rbroker.example.service.ScoreSubscriptions;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.MessageBuilder;
+
+import org.apache.log4j.Logger;
+
+public class ScoreSubscriptionInterceptor extends ChannelInterceptorAdapter {
+
+    private static Logger log =
+                    Logger.getLogger(ScoreSubscriptionInterceptor.class);
+
+    private final ScoreSubscriptions scoreSubscriptions;
+
+    public ScoreSubscriptionInterceptor(ScoreSubscriptions scoreSubscriptions) {
+        this.scoreSubscriptions = scoreSubscriptions;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        StompCommand command = accessor.getCommand();
+        if(command == null) {
+            return message;
+        }
+
+        switch(command) {
+
+            case SUBSCRIBE:
+                if(!ScoreSubscriptions.FRAUDMSGTOPIC.equals(
+                                            accessor.getDestination())) {
+                    return message;
+                }
+
+                ScoreFilter filter;
+                try {
+                    filter = ScoreFilter.parse(
+                        accessor.getFirstNativeHeader("minScore"),
+                        accessor.getFirstNativeHeader("outcome"),
+                        accessor.getFirstNativeHeader("statsOnly"));
+                } catch(Exception ex) {
+                    log.warn("ScoreSubscriptionInterceptor: invalid " +
+                             "filter, subscribing unfiltered, ex=" + ex);
+                    filter = null;
+                }
+
+                boolean binary = "binary".equalsIgnoreCase(
+                            accessor.getFirstNativeHeader("encoding"));
+
+                String destination =
+                    scoreSubscriptions.subscribe(accessor.getSessionId(),
+                                                 accessor.getSubscriptionId(),
+                                                 filter, binary);
+                if(destination.equals(accessor.getDestination())) {
+                    return message;
+                }
+
+                accessor.setDestination(destination);
+                return MessageBuilder.withPayload(message.getPayload())
+                                     .copyHeaders(accessor.toMap())
+                                     .build();
+
+            case UNSUBSCRIBE:
+                scoreSubscriptions.unsubscribe(accessor.getSessionId(),
+                                               accessor.getSubscriptionId());
+                return message;
+
+            case DISCONNECT:
+                scoreSubscriptions.disconnect(accessor.getSessionId());
+                return message;
+
+            default:
+                return message;
+        }
+    }
+}
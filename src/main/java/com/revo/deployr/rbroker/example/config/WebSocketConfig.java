@@ -17,10 +17,17 @@
  *
  * Endpoint: /fraudengine
  * Topic:    /topic
+ *
+ * SUBSCRIBE frames on /topic/fraud are mapped to their ScoreFilter
+ * destinations by ScoreSubscriptionInterceptor.
  */
 package com.revo.deployr.rbroker.example.config;
 
+import com.revo.deployr.rbroker.example.service.ScoreSubscriptions;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.AbstractWebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
@@ -30,6 +37,9 @@ import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 @EnableWebSocketMessageBroker
 public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
 
+	@Autowired
+	private ScoreSubscriptions scoreSubscriptions;
+
 	@Override
 	public void configureMessageBroker(MessageBrokerRegistry config) {
 		config.enableSimpleBroker("/topic");
@@ -41,4 +51,10 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
 		registry.addEndpoint("/fraudengine").withSockJS();
 	}
 
+	@Override
+	public void configureClientInboundChannel(ChannelRegistration registration) {
+		registration.setInterceptors(
+			new ScoreSubscriptionInterceptor(scoreSubscriptions));
+	}
+
 }
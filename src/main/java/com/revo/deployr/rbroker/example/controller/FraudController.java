@@ -18,13 +18,33 @@
  * Mapping: /pool/init/{size} supports (re)building RBroker runtime.
  *
  * Mapping: /fraud/score/{tasks} supports RTask execution on RBroker runtime.
+ *
+ * Mapping: /fraud/score/{bal}/{trans}/{credit} supports scoring a single
+ * account, returning the FraudScore on the HTTP response.
+ *
+ * Mapping: /fraud/stats/latency supports RTask timing percentiles.
+ *
+ * Mapping: /fraud/ready supports load balancer readiness checks.
  */
 package com.revo.deployr.rbroker.example.controller;
 
+import com.revo.deployr.rbroker.example.model.FraudScore;
+import com.revo.deployr.rbroker.example.model.LatencyPercentiles;
+import com.revo.deployr.rbroker.example.model.Readiness;
+import com.revo.deployr.rbroker.example.model.ScoreResponse;
 import com.revo.deployr.rbroker.example.service.FraudService;
+import com.revo.deployr.rbroker.example.service.ScoreCallback;
+import com.revo.deployr.rbroker.example.service.ScoreLattice;
+import com.revo.deployr.rbroker.example.service.WorkloadGenerator;
+import com.revo.deployr.client.broker.RTaskResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
 @RestController
@@ -33,6 +53,8 @@ public class FraudController {
 
     private static Logger log = Logger.getLogger(FraudController.class);
     private final FraudService fraudService;
+    private static final long SCORE_TIMEOUT =
+                                Long.getLong("score.timeout", 5000L);
 
     @Autowired
     public FraudController(FraudService fraudService) {
@@ -65,29 +87,167 @@ public class FraudController {
      * for fraud.
      *
      * A call to /fraud/score/N will result in N RTasks, representing
-     * N demo tasks with randomly generated data, being scored.
+     * N demo tasks with data drawn from the WorkloadGenerator, being
+     * scored. When the workload paces arrivals the response is held
+     * until the last demo task has been submitted.
+     *
+     * Responds 429 if some of the N demo tasks were shed because too
+     * many RTasks are already outstanding on the RBroker runtime, or 503
+     * if they were refused because the circuit breaker is open.
+     * Demo tasks are scored on the bulk lane unless priority=true.
      */
     @RequestMapping(value = "/score/{tasks}", method = RequestMethod.GET)
-    public void score(@PathVariable("tasks") int tasks) {
+    public ResponseEntity<String> score(@PathVariable("tasks") int tasks,
+                @RequestParam(value = "priority", required = false) Boolean priority) {
 
         tasks = (tasks == 0) ? 1 : tasks;
         log.info("REST:/score/" + tasks + " called.");
 
+        WorkloadGenerator workload = fraudService.getWorkload();
+        int[] account = new int[3];
+        long arrival = System.nanoTime();
+
         for(int i=0; i<tasks;i++) {
             try {
                 /*
-                 * FraudService.buildTask creates an RTask using
-                 * randomly generated demo account data.
-                 *
-                 * FraudService.submit takes that RTask and passes it
-                 * to an instance of RBroker for execution.
+                 * Generated demo account data, at its arrival time.
                  */
-                fraudService.submit(fraudService.buildTask());
+                workload.next(account);
+                int bal = account[0];
+                int trans = account[1];
+                int credit = account[2];
+
+                arrival += workload.nextArrival();
+                long wait = arrival - System.nanoTime();
+                if(wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+
+                /*
+                 * FraudService.score builds an RTask for the account,
+                 * or adds the account to the next micro-batch RTask,
+                 * and passes it to an instance of RBroker for execution.
+                 */
+                if(!fraudService.score(bal, trans, credit, null,
+                                       Boolean.TRUE.equals(priority))) {
+                    boolean open = fraudService.isCircuitOpen();
+                    String msg = (open ? "RBroker runtime unavailable, " +
+                                         "refused " :
+                                         "RBroker runtime busy, shed ") +
+                                (tasks - i) + " of " + tasks + " task(s).";
+                    log.warn("FraudController: score " + msg);
+                    return new ResponseEntity<String>(msg,
+                                open ? HttpStatus.SERVICE_UNAVAILABLE :
+                                       HttpStatus.TOO_MANY_REQUESTS);
+                }
 
             } catch(Exception ex) {
                 log.warn("FraudController: score ex=" + ex);
             }
         }
+
+        return new ResponseEntity<String>(HttpStatus.OK);
+    }
+
+    /*
+     * Score a single account for fraud.
+     *
+     * The FraudScore, along with RTask and request timings, is returned
+     * on the HTTP response once available. The response is completed
+     * asynchronously so no servlet thread waits on the RBroker runtime.
+     * Responds 504 if no score is available within the optional timeout,
+     * in milliseconds, 502 if the account failed to score, 429 if the
+     * account was rejected because the RBroker runtime is busy and 503
+     * if it was refused because the circuit breaker is open.
+     * The account is scored on the priority lane unless priority=false.
+     */
+    @RequestMapping(value = "/score/{bal}/{trans}/{credit}",
+                    method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<ScoreResponse>> scoreAccount(
+                @PathVariable("bal") int bal,
+                @PathVariable("trans") int trans,
+                @PathVariable("credit") int credit,
+                @RequestParam(value = "timeout", required = false) Long timeout,
+                @RequestParam(value = "priority", required = false) Boolean priority) {
+
+        final long started = System.currentTimeMillis();
+
+        final ScoreResponse timedOut = new ScoreResponse();
+        timedOut.timedOut = true;
+
+        final DeferredResult<ResponseEntity<ScoreResponse>> deferredResult =
+            new DeferredResult<ResponseEntity<ScoreResponse>>(
+                (timeout != null) ? timeout : SCORE_TIMEOUT,
+                new ResponseEntity<ScoreResponse>(timedOut,
+                                            HttpStatus.GATEWAY_TIMEOUT));
+
+        if(!ScoreLattice.inDomain(bal, trans, credit)) {
+            deferredResult.setResult(
+                new ResponseEntity<ScoreResponse>(HttpStatus.BAD_REQUEST));
+            return deferredResult;
+        }
+
+        ScoreCallback callback = new ScoreCallback() {
+            public void onScore(FraudScore fraudScore,
+                                RTaskResult rTaskResult) {
+
+                ScoreResponse response = new ScoreResponse();
+                response.fraudScore = fraudScore;
+                if(rTaskResult != null) {
+                    response.timeOnCode = rTaskResult.getTimeOnCode();
+                    response.timeOnServer = rTaskResult.getTimeOnServer();
+                    response.timeOnCall = rTaskResult.getTimeOnCall();
+                }
+                response.timeOnRequest =
+                    System.currentTimeMillis() - started;
+
+                deferredResult.setResult(
+                    new ResponseEntity<ScoreResponse>(response,
+                        fraudScore.success ? HttpStatus.OK :
+                                             HttpStatus.BAD_GATEWAY));
+            }
+        };
+
+        try {
+
+            if(!fraudService.score(bal, trans, credit, callback,
+                                   !Boolean.FALSE.equals(priority))) {
+                deferredResult.setResult(new ResponseEntity<ScoreResponse>(
+                    fraudService.isCircuitOpen() ?
+                                            HttpStatus.SERVICE_UNAVAILABLE :
+                                            HttpStatus.TOO_MANY_REQUESTS));
+            }
+
+        } catch(Exception ex) {
+            log.warn("FraudController: scoreAccount ex=" + ex);
+            deferredResult.setErrorResult(ex);
+        }
+
+        return deferredResult;
+    }
+
+    /*
+     * RTask code execution, server overhead and network latency
+     * percentiles, and priority and bulk lane completion percentiles,
+     * in milliseconds, over the rolling latency window.
+     */
+    @RequestMapping(value = "/stats/latency", method = RequestMethod.GET)
+    public Map<String, LatencyPercentiles> latency() {
+        return fraudService.getLatencyPercentiles();
+    }
+
+    /*
+     * Readiness to score, with the time from startup to ready. Responds
+     * 503 until startup warm-up completes, or until a pool is built when
+     * warm-up is disabled, and while the circuit breaker is open.
+     */
+    @RequestMapping(value = "/ready", method = RequestMethod.GET)
+    public ResponseEntity<Readiness> ready() {
+
+        Readiness readiness = fraudService.getReadiness();
+        return new ResponseEntity<Readiness>(readiness,
+                    readiness.ready ? HttpStatus.OK :
+                                      HttpStatus.SERVICE_UNAVAILABLE);
     }
 
 }
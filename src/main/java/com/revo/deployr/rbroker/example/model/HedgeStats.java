@@ -0,0 +1,50 @@
+/*
+ * HedgeStats.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Runtime statistics for hedged RTasks.
+ *
+ * Delivered within RuntimeStats.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class HedgeStats {
+
+    /*
+     * Time, in milliseconds, after which an outstanding RTask is hedged.
+     */
+    public long threshold;
+
+    /*
+     * Hedges submitted, hedges that won, and RTasks not hedged because
+     * the hedge budget was spent.
+     */
+    public long hedgedTasks;
+    public long hedgeWins;
+    public long overBudgetTasks;
+
+    /*
+     * Hedges submitted, as a percentage of RTasks submitted.
+     */
+    public double extraLoad;
+
+    /*
+     * Time from submit to completion, in milliseconds, of the original
+     * RTasks, as it would be without hedging, and to the winning result.
+     */
+    public LatencyPercentiles unhedgedPercentiles;
+    public LatencyPercentiles hedgedPercentiles;
+}
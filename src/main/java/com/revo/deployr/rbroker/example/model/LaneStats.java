@@ -0,0 +1,42 @@
+/*
+ * LaneStats.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Runtime statistics for a single scoring priority lane.
+ *
+ * Delivered within RuntimeStats.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class LaneStats {
+
+    public long submittedTasks;
+    public long successfulTasks;
+    public long failedTasks;
+    public int outstandingTasks;
+
+    /*
+     * RTasks held back from the RBroker runtime so as not to use
+     * the pool concurrency reserved for the priority lane.
+     */
+    public int deferredTasks;
+
+    /*
+     * Time from submit to completion, in milliseconds, including
+     * any time deferred or queued on the RBroker runtime.
+     */
+    public LatencyPercentiles latencyPercentiles;
+}
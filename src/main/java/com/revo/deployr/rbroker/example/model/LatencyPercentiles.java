@@ -0,0 +1,30 @@
+/*
+ * LatencyPercentiles.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * RTask timing percentiles, in milliseconds, over a rolling window.
+ *
+ * Delivered within RuntimeStats and on GET:/fraud/stats/latency.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class LatencyPercentiles {
+
+    public long p50;
+    public long p90;
+    public long p99;
+    public long p999;
+}
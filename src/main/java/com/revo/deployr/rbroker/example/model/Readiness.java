@@ -0,0 +1,45 @@
+/*
+ * Readiness.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Server readiness to score, returned by FraudController
+ * GET:/fraud/ready.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class Readiness {
+
+    public boolean ready;
+
+    /*
+     * STARTING, WARMING, READY or FAILED.
+     */
+    public String state;
+
+    /*
+     * Time from JVM start to ready, in milliseconds, or 0.
+     */
+    public long timeToReady;
+
+    /*
+     * Time spent warming up the pool, in milliseconds.
+     */
+    public long warmupTime;
+    public long warmupTasks;
+    public long failedWarmupTasks;
+    public int requestedPoolSize;
+    public int allocatedPoolSize;
+}
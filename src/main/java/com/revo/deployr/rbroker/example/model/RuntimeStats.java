@@ -19,6 +19,7 @@
  */
 package com.revo.deployr.rbroker.example.model;
 
+import java.util.List;
 import lombok.Data;
 
 public @Data class RuntimeStats {
@@ -40,6 +41,13 @@ public @Data class RuntimeStats {
     public int allocatedPoolSize;
     public int maxConcurrency;
 
+    /*
+     * RBroker Sharding
+     *
+     * Per DeployR endpoint statistics, when sharded.
+     */
+    public List<ShardStats> shards;
+
     /*
      * RTask Throughput
      */
@@ -47,6 +55,49 @@ public @Data class RuntimeStats {
     public long successfulTasks;
     public long failedTasks;
 
+    /*
+     * RTask Admission
+     *
+     * RTasks outstanding on the RBroker runtime, and account
+     * requests rejected because too many RTasks were outstanding.
+     */
+    public int outstandingTasks;
+    public long rejectedTasks;
+
+    /*
+     * RBroker Circuit Breaker
+     *
+     * CLOSED, OPEN or HALF_OPEN, and requests refused while not
+     * CLOSED, when the circuit breaker is enabled.
+     */
+    public String circuitState;
+    public long circuitRefused;
+
+    /*
+     * Hedged RTasks
+     *
+     * Hedge counts, extra load and tail latency, when hedging is
+     * enabled.
+     */
+    public HedgeStats hedging;
+
+    /*
+     * RTask Completion Dispatch
+     *
+     * Completions queued off the RBroker threads, and handoff time
+     * percentiles in microseconds, when dispatch is enabled.
+     */
+    public int dispatchQueueDepth;
+    public LatencyPercentiles dispatchHandoffPercentiles;
+
+    /*
+     * RTask Priority Lanes
+     *
+     * Interactive single account requests and bulk scoring.
+     */
+    public LaneStats priorityLane;
+    public LaneStats bulkLane;
+
     /*
      * RTask Timing (Averages)
      */
@@ -54,5 +105,30 @@ public @Data class RuntimeStats {
     public long averageServerOverhead;
     public long averageNetworkLatency;
 
+    /*
+     * RTask Timing (Percentiles)
+     */
+    public LatencyPercentiles codeExecutionPercentiles;
+    public LatencyPercentiles serverOverheadPercentiles;
+    public LatencyPercentiles networkLatencyPercentiles;
+
+    /*
+     * Native Scoring
+     *
+     * Native scores verified against, and mismatched with, RBroker.
+     */
+    public long nativeScores;
+    public long verifiedScores;
+    public long mismatchedScores;
+
+    /*
+     * Score Cache
+     *
+     * Hits and coalesced requests were answered without an RTask.
+     */
+    public long cacheHits;
+    public long cacheCoalesced;
+    public long cacheMisses;
+
     public final String msgType = "RUNTIMESTATS";
 }
@@ -0,0 +1,44 @@
+/*
+ * ScoreResponse.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * SCORERESPONSE - Single account fraud score response.
+ *
+ * Returned on the HTTP response to GET:/fraud/score/{bal}/{trans}/{credit}.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class ScoreResponse {
+
+    public FraudScore fraudScore;
+
+    /*
+     * RTask Timing
+     *
+     * Zero when the score was not computed by an RTask.
+     */
+    public long timeOnCode;
+    public long timeOnServer;
+    public long timeOnCall;
+
+    /*
+     * Request Timing
+     *
+     * Elapsed time from request to response, in milliseconds.
+     */
+    public long timeOnRequest;
+    public boolean timedOut;
+}
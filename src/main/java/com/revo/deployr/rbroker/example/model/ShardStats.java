@@ -0,0 +1,40 @@
+/*
+ * ShardStats.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Runtime statistics for a single DeployR endpoint when scoring is
+ * sharded across multiple endpoints.
+ *
+ * Delivered within RuntimeStats.
+ */
+package com.revo.deployr.rbroker.example.model;
+
+import lombok.Data;
+
+public @Data class ShardStats {
+
+    public String endpoint;
+    public boolean healthy;
+    public int maxConcurrency;
+    public int outstandingTasks;
+
+    public long submittedTasks;
+    public long successfulTasks;
+    public long failedTasks;
+
+    /*
+     * Moving average time on call, in milliseconds.
+     */
+    public long averageCallTime;
+}
@@ -0,0 +1,96 @@
+/*
+ * AdmissionControl.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Bounded admission in front of RBroker.submit.
+ *
+ * Tracks the number of RTasks outstanding on the RBroker runtime and
+ * rejects new work once more than queueDepth RTasks per R session,
+ * as reported by RBroker.maxConcurrency, are outstanding.
+ *
+ * Admitted work reserves its slot atomically, so concurrent callers
+ * cannot all pass the same check and overshoot the bound. The slot is
+ * then either taken over by the RTask submitted for the work, or
+ * released.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdmissionControl {
+
+    private final int queueDepth;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /*
+     * A queueDepth of 0 admits all work, while still tracking the
+     * number of outstanding RTasks.
+     */
+    public AdmissionControl(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /*
+     * Returns true, with an outstanding slot reserved, if new work may
+     * be submitted to an RBroker runtime with maxConcurrency R sessions,
+     * otherwise counts a rejection. The reserved slot is counted as
+     * the outstanding RTask submitted for the work, or given back by
+     * release.
+     */
+    public boolean admit(int maxConcurrency) {
+
+        if(queueDepth <= 0) {
+            outstanding.incrementAndGet();
+            return true;
+        }
+
+        int limit = queueDepth * Math.max(1, maxConcurrency);
+        while(true) {
+            int current = outstanding.get();
+            if(current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if(outstanding.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Gives back a slot reserved by admit for which no RTask was
+     * submitted.
+     */
+    public void release() {
+        outstanding.decrementAndGet();
+    }
+
+    public void submitted() {
+        outstanding.incrementAndGet();
+    }
+
+    public void completed() {
+        outstanding.decrementAndGet();
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+}
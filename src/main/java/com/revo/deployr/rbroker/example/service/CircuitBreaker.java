@@ -0,0 +1,276 @@
+/*
+ * CircuitBreaker.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Fast-fail circuit breaker in front of RBroker.submit.
+ *
+ * CLOSED    - RTasks are submitted. The breaker opens when the RBroker
+ *             runtime disconnects or reports a runtime error, or when at
+ *             least failureRate of the last window RTasks failed.
+ * OPEN      - new work is refused at once. The pool is rebuilt in the
+ *             background, retrying with exponential backoff from
+ *             minBackoff to maxBackoff milliseconds.
+ * HALF_OPEN - the pool was rebuilt, new work is still refused while
+ *             probes trial RTasks run. The breaker closes once every
+ *             probe succeeds, and opens again, with a longer backoff, if
+ *             any probe fails or the probes do not complete within
+ *             probeTimeout milliseconds.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class CircuitBreaker {
+
+    private static Logger log = Logger.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /*
+     * Recovery actions, called on the breaker's own thread.
+     */
+    public interface Recovery {
+
+        /*
+         * Rebuilds the RBroker pool, returns true if it is connected.
+         */
+        boolean reconnect();
+
+        /*
+         * Submits probes trial RTasks, each to be reported by
+         * probeCompleted.
+         */
+        void probe(int probes);
+
+        void stateChanged(State state, String reason);
+    }
+
+    private final Recovery recovery;
+    private final double failureRate;
+    private final long minBackoff;
+    private final long maxBackoff;
+    private final int probes;
+    private final long probeTimeout;
+    private final ScheduledExecutorService timer;
+
+    /*
+     * Outcomes of the last window RTasks while closed, true on failure.
+     */
+    private final boolean[] outcomes;
+    private int nextOutcome = 0;
+    private int recorded = 0;
+    private int failures = 0;
+
+    private volatile State state = State.CLOSED;
+    private long backoff;
+    private int probesSucceeded = 0;
+    private long epoch = 0L;
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public CircuitBreaker(Recovery recovery,
+                          int window,
+                          double failureRate,
+                          long minBackoff,
+                          long maxBackoff,
+                          int probes,
+                          long probeTimeout) {
+
+        this.recovery = recovery;
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.failureRate = failureRate;
+        this.minBackoff = Math.max(1L, minBackoff);
+        this.maxBackoff = Math.max(this.minBackoff, maxBackoff);
+        this.probes = Math.max(1, probes);
+        this.probeTimeout = probeTimeout;
+        this.backoff = this.minBackoff;
+
+        timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "rbroker-reconnect");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    /*
+     * Returns true if new work may be submitted, otherwise counts a
+     * refusal.
+     */
+    public boolean allow() {
+
+        if(state == State.CLOSED) {
+            return true;
+        }
+
+        refused.incrementAndGet();
+        return false;
+    }
+
+    /*
+     * Records the outcome of an RTask that is not a probe.
+     */
+    public synchronized void record(boolean success) {
+
+        if(state != State.CLOSED) {
+            return;
+        }
+
+        if(recorded == outcomes.length) {
+            if(outcomes[nextOutcome]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+
+        outcomes[nextOutcome] = !success;
+        if(!success) {
+            failures++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+
+        if(recorded == outcomes.length &&
+           failures >= failureRate * outcomes.length) {
+            open(failures + " of the last " + outcomes.length +
+                 " RTasks failed.");
+        }
+    }
+
+    public synchronized void probeCompleted(boolean success) {
+
+        if(state != State.HALF_OPEN) {
+            return;
+        }
+
+        if(!success) {
+            backoff = Math.min(backoff * 2, maxBackoff);
+            open("Trial RTask failed.");
+        } else
+        if(++probesSucceeded == probes) {
+            close();
+        }
+    }
+
+    /*
+     * Opens the breaker, unless already open, and schedules a pool
+     * rebuild after the current backoff.
+     */
+    public synchronized void open(String reason) {
+
+        if(state == State.OPEN) {
+            return;
+        }
+
+        state = State.OPEN;
+        opened.incrementAndGet();
+        final long openEpoch = ++epoch;
+
+        log.warn("CircuitBreaker: open, " + reason +
+                 " Reconnecting in " + backoff + "ms.");
+        recovery.stateChanged(state, reason);
+        schedule(openEpoch, backoff);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getRefused() {
+        return refused.get();
+    }
+
+    public long getOpened() {
+        return opened.get();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void schedule(final long openEpoch, long delay) {
+        timer.schedule(new Runnable() {
+            public void run() {
+                reconnect(openEpoch);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect(final long openEpoch) {
+
+        boolean connected = false;
+        try {
+            connected = recovery.reconnect();
+        } catch(Exception ex) {
+            log.warn("CircuitBreaker: reconnect ex=" + ex);
+        }
+
+        synchronized(this) {
+
+            if(epoch != openEpoch || state != State.OPEN) {
+                return;
+            }
+
+            if(!connected) {
+                backoff = Math.min(backoff * 2, maxBackoff);
+                log.warn("CircuitBreaker: reconnect failed, retrying in " +
+                         backoff + "ms.");
+                schedule(openEpoch, backoff);
+                return;
+            }
+
+            state = State.HALF_OPEN;
+            probesSucceeded = 0;
+            log.info("CircuitBreaker: half-open, submitting " + probes +
+                     " trial RTask(s).");
+            recovery.stateChanged(state, "RBroker pool rebuilt.");
+        }
+
+        recovery.probe(probes);
+
+        timer.schedule(new Runnable() {
+            public void run() {
+                synchronized(CircuitBreaker.this) {
+                    if(epoch == openEpoch && state == State.HALF_OPEN) {
+                        backoff = Math.min(backoff * 2, maxBackoff);
+                        open("Trial RTasks timed out.");
+                    }
+                }
+            }
+        }, probeTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void close() {
+
+        state = State.CLOSED;
+        backoff = minBackoff;
+        recorded = 0;
+        failures = 0;
+        nextOutcome = 0;
+
+        log.info("CircuitBreaker: closed.");
+        recovery.stateChanged(state, "Trial RTasks succeeded.");
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * CompletionDispatcher.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * RTaskListener that hands RTask completions off the RBroker threads.
+ *
+ * Each completion is appended to a lock-free queue and the RBroker
+ * thread returns at once. Completions are passed on to the downstream
+ * RTaskListener by at most maxDrainers drainers running on the given
+ * executor. A drainer is only started when fewer than maxDrainers are
+ * running, and keeps polling until the queue is empty, so the executor
+ * sees one task per burst of completions rather than one per RTask.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.util.LatencyHistogram;
+
+import com.revo.deployr.client.broker.RTask;
+import com.revo.deployr.client.broker.RTaskListener;
+import com.revo.deployr.client.broker.RTaskResult;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class CompletionDispatcher implements RTaskListener {
+
+    private static Logger log = Logger.getLogger(CompletionDispatcher.class);
+
+    private static class Completion {
+        final RTask rTask;
+        final RTaskResult rTaskResult;
+        final Throwable throwable;
+        final boolean error;
+        final long enqueued;
+
+        Completion(RTask rTask, RTaskResult rTaskResult,
+                   Throwable throwable, boolean error) {
+            this.rTask = rTask;
+            this.rTaskResult = rTaskResult;
+            this.throwable = throwable;
+            this.error = error;
+            this.enqueued = System.nanoTime();
+        }
+    }
+
+    private final RTaskListener listener;
+    private final ExecutorService executor;
+    private final int maxDrainers;
+    private final ConcurrentLinkedQueue<Completion> queue =
+                            new ConcurrentLinkedQueue<Completion>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    /*
+     * Time from RBroker callback to downstream dispatch, in microseconds.
+     */
+    private final LatencyHistogram handoffLatency;
+
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    public CompletionDispatcher(RTaskListener listener,
+                                ExecutorService executor,
+                                int maxDrainers,
+                                long latencyWindow) {
+        this.listener = listener;
+        this.executor = executor;
+        this.maxDrainers = Math.max(1, maxDrainers);
+        this.handoffLatency = new LatencyHistogram(latencyWindow, 6);
+    }
+
+    /*
+     * Builds the downstream executor, one virtual thread per drainer
+     * when virtual is requested and supported by the JVM, otherwise a
+     * fixed pool of daemon threads.
+     */
+    public static ExecutorService buildExecutor(int threads, boolean virtual) {
+
+        if(virtual) {
+            try {
+                ExecutorService executor = (ExecutorService)
+                    Executors.class.getMethod(
+                        "newVirtualThreadPerTaskExecutor").invoke(null);
+                log.info("RTask completions dispatched on virtual threads.");
+                return executor;
+            } catch(Exception ex) {
+                log.info("Virtual threads unavailable, RTask completions " +
+                         "dispatched on " + threads + " thread(s).");
+            }
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,
+                            "rbroker-dispatch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /*
+     * RBroker RTaskListener Implementation.
+     */
+
+    public void onTaskCompleted(RTask rTask, RTaskResult rTaskResult) {
+        dispatch(new Completion(rTask, rTaskResult, null, false));
+    }
+
+    public void onTaskError(RTask rTask, Throwable throwable) {
+        dispatch(new Completion(rTask, null, throwable, true));
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    public LatencyHistogram getHandoffLatency() {
+        return handoffLatency;
+    }
+
+    /*
+     * Waits up to timeout milliseconds until as many completions have
+     * been delivered as had been queued when called. Returns false on
+     * timeout.
+     */
+    public boolean awaitQueued(long timeout) throws InterruptedException {
+
+        long target = queued.get();
+        long deadline = System.currentTimeMillis() + timeout;
+        while(delivered.get() < target) {
+            if(System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /*
+     * Dispatches any queued completions, then stops the executor.
+     */
+    public void shutdown() {
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch(InterruptedException iex) {}
+
+        Completion completion;
+        while((completion = queue.poll()) != null) {
+            depth.decrementAndGet();
+            deliver(completion);
+        }
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void dispatch(Completion completion) {
+
+        queued.incrementAndGet();
+        queue.offer(completion);
+        depth.incrementAndGet();
+
+        if(tryStartDrainer()) {
+            try {
+                executor.execute(drainer);
+            } catch(Exception ex) {
+                /*
+                 * Executor shut down, deliver on the RBroker thread.
+                 */
+                drain();
+            }
+        }
+    }
+
+    private boolean tryStartDrainer() {
+
+        int running;
+        while((running = drainers.get()) < maxDrainers) {
+            if(drainers.compareAndSet(running, running + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+
+        do {
+
+            Completion completion;
+            while((completion = queue.poll()) != null) {
+                depth.decrementAndGet();
+                handoffLatency.record(
+                    (System.nanoTime() - completion.enqueued) / 1000L);
+                deliver(completion);
+            }
+
+            drainers.decrementAndGet();
+
+            /*
+             * A completion queued after the last poll, but before the
+             * decrement, may have found every drainer running.
+             */
+        } while(!queue.isEmpty() && tryStartDrainer());
+    }
+
+    private void deliver(Completion completion) {
+
+        try {
+            if(!completion.error) {
+                listener.onTaskCompleted(completion.rTask,
+                                         completion.rTaskResult);
+            } else {
+                listener.onTaskError(completion.rTask,
+                                     completion.throwable);
+            }
+            dispatched.incrementAndGet();
+        } catch(Exception ex) {
+            log.warn("CompletionDispatcher: deliver ex=" + ex);
+        } finally {
+            delivered.incrementAndGet();
+        }
+    }
+}
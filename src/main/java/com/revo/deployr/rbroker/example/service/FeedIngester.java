@@ -0,0 +1,730 @@
+/*
+ * FeedIngester.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Continuous ingestion of a transaction feed into FraudService.
+ *
+ * Tails an append-only CSV or JSON-lines file, or reads a TCP socket,
+ * named by -Dfeed.source. Records are parsed straight from the read
+ * buffer into ints, scored on the bulk lane, and written to the
+ * -Dfeed.output file in feed order as:
+ *
+ * balance,transactions,credit,score,success
+ *
+ * At most -Dfeed.depth records per R session, and never more than
+ * -Dfeed.window records, are in-flight at once. Each in-flight record
+ * occupies a slot of a fixed ring, so heap use is constant however
+ * long the feed runs. A record not scored within -Dfeed.timeout
+ * milliseconds of being accepted is written as failed, so one lost
+ * score cannot hold up the feed.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+
+import com.revo.deployr.client.broker.RTaskResult;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import org.apache.log4j.Logger;
+
+@Service
+public class FeedIngester {
+
+    private static Logger log = Logger.getLogger(FeedIngester.class);
+
+    private static final byte[] BALANCE = "balance".getBytes();
+    private static final byte[] TRANSACTIONS = "transactions".getBytes();
+    private static final byte[] CREDIT = "credit".getBytes();
+
+    private static final byte FREE = 0;
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+
+    /*
+     * Source of feed bytes. Returns the number of bytes read into
+     * buffer, or 0 if none are available yet.
+     */
+    private interface FeedSource {
+        int read(ByteBuffer buffer) throws IOException;
+        void close();
+    }
+
+    private final FraudService fraudService;
+    private final String source;
+    private final String output;
+    private final boolean jsonLines;
+    private final int[] columns;
+    private final int depth;
+    private final long pollMillis;
+    private final long timeout;
+
+    /*
+     * Ring of in-flight records, indexed by sequence % capacity.
+     */
+    private final int capacity;
+    private final int[] balance;
+    private final int[] transactions;
+    private final int[] credit;
+    private final double[] score;
+    private final boolean[] success;
+    private final byte[] state;
+    /*
+     * Time each record was accepted for scoring, Long.MAX_VALUE until
+     * then.
+     */
+    private final long[] submitted;
+    private final ScoreCallback[] callbacks;
+    private long nextWrite = 0;
+    private int inFlight = 0;
+
+    private final byte[] line;
+    private int lineLength = 0;
+    private boolean lineOverflow = false;
+    private int parsePosition = 0;
+    private int parsedValue = 0;
+    private final int[] fields = new int[3];
+
+    private volatile boolean running = false;
+    private FeedSource feedSource = null;
+    private FileChannel sink = null;
+    private Thread reader = null;
+    private Thread writer = null;
+
+    private long records = 0;
+    private long malformed = 0;
+    private long written = 0;
+    private long failed = 0;
+    private long timedOut = 0;
+
+    @Autowired
+    public FeedIngester(FraudService fraudService) {
+
+        this.fraudService = fraudService;
+        this.source = System.getProperty("feed.source");
+        this.output = System.getProperty("feed.output");
+        this.depth = Integer.getInteger("feed.depth", 2);
+        this.pollMillis = Long.getLong("feed.poll", 100L);
+        this.timeout = Long.getLong("feed.timeout", 60000L);
+        this.capacity = Math.max(1, Integer.getInteger("feed.window", 4096));
+
+        String format = System.getProperty("feed.format");
+        this.jsonLines = (format != null) ? "jsonl".equalsIgnoreCase(format) :
+                         (source != null && (source.endsWith(".jsonl") ||
+                                             source.endsWith(".json")));
+
+        /*
+         * CSV column indexes of balance, transactions and credit.
+         */
+        String[] indexes =
+            System.getProperty("feed.columns", "0,1,2").split(",");
+        this.columns = new int[3];
+        for(int i=0; i<3; i++) {
+            columns[i] = Integer.parseInt(indexes[i].trim());
+        }
+
+        this.line = new byte[Integer.getInteger("feed.line", 4096)];
+        this.balance = new int[capacity];
+        this.transactions = new int[capacity];
+        this.credit = new int[capacity];
+        this.score = new double[capacity];
+        this.success = new boolean[capacity];
+        this.state = new byte[capacity];
+        this.submitted = new long[capacity];
+        this.callbacks = new ScoreCallback[capacity];
+
+        for(int i=0; i<capacity; i++) {
+            callbacks[i] = newCallback(i);
+        }
+    }
+
+    /*
+     * Spring Lifecycle Event Handler
+     *
+     * Service: start, ingestion begins once an RBroker pool is ready.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+
+        if(source == null) {
+            return;
+        }
+
+        if(output != null) {
+            sink = new FileOutputStream(output, true).getChannel();
+        }
+
+        running = true;
+
+        reader = new Thread(new Runnable() {
+            public void run() {
+                read();
+            }
+        }, "feed-reader");
+        reader.setDaemon(true);
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "feed-writer");
+        writer.setDaemon(true);
+
+        writer.start();
+        reader.start();
+
+        log.info("Feed ingestion enabled, feed.source=" + source +
+                 ", feed.format=" + (jsonLines ? "jsonl" : "csv") +
+                 ", feed.output=" + output + ".");
+    }
+
+    /*
+     * Spring Lifecycle Event Handler
+     *
+     * Service: stop, records still in-flight are not written.
+     */
+    @PreDestroy
+    public void stop() {
+
+        if(!running) {
+            return;
+        }
+
+        running = false;
+        reader.interrupt();
+        synchronized(this) {
+            notifyAll();
+        }
+
+        try {
+            reader.join(pollMillis * 10);
+            writer.join(pollMillis * 10);
+        } catch(InterruptedException iex) {}
+
+        if(feedSource != null) {
+            feedSource.close();
+        }
+        if(sink != null) {
+            try {
+                sink.close();
+            } catch(IOException ioex) {}
+        }
+
+        log.info("Feed ingestion stopped, read " + records + " record(s), " +
+                 "wrote " + written + ", failed " + failed +
+                 " (" + timedOut + " timed out), malformed " +
+                 malformed + ".");
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void read() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+        try {
+
+            while(running && fraudService.maxConcurrency() == 0) {
+                Thread.sleep(pollMillis * 10);
+            }
+
+            feedSource = source.startsWith("tcp://") ?
+                                    openSocket(source.substring(6)) :
+                                    openFile(new File(source));
+
+            while(running) {
+
+                int count = feedSource.read(buffer);
+                if(count <= 0) {
+                    Thread.sleep(pollMillis);
+                    continue;
+                }
+
+                byte[] bytes = buffer.array();
+                for(int i=0; i<count && running; i++) {
+
+                    byte b = bytes[i];
+                    if(b == '\n') {
+                        parseLine();
+                    } else
+                    if(lineLength < line.length) {
+                        line[lineLength++] = b;
+                    } else {
+                        lineOverflow = true;
+                    }
+                }
+                buffer.clear();
+            }
+
+        } catch(InterruptedException iex) {
+        } catch(ClosedByInterruptException ciex) {
+        } catch(Exception ex) {
+            log.warn("FeedIngester: read ex=" + ex);
+        }
+    }
+
+    private void parseLine() throws InterruptedException {
+
+        int length = lineLength;
+        boolean overflow = lineOverflow;
+        lineLength = 0;
+        lineOverflow = false;
+
+        if(length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if(length == 0) {
+            return;
+        }
+
+        boolean parsed = !overflow &&
+            (jsonLines ? parseJson(length) : parseCsv(length));
+
+        if(!parsed || fields[0] < 0 || fields[1] < 0 || fields[2] < 0) {
+            malformed++;
+            return;
+        }
+
+        records++;
+        submit(fields[0], fields[1], fields[2]);
+    }
+
+    /*
+     * Parses the configured columns of a CSV line into fields. A header
+     * line fails to parse and is counted as malformed.
+     */
+    private boolean parseCsv(int length) {
+
+        int found = 0;
+        int column = 0;
+        parsePosition = 0;
+
+        while(parsePosition <= length && found < 3) {
+
+            for(int i=0; i<3; i++) {
+                if(columns[i] == column) {
+                    if(!parseInt(length)) {
+                        return false;
+                    }
+                    fields[i] = parsedValue;
+                    found++;
+                }
+            }
+
+            while(parsePosition < length && line[parsePosition] != ',') {
+                parsePosition++;
+            }
+            parsePosition++;
+            column++;
+        }
+
+        return found == 3;
+    }
+
+    /*
+     * Parses the balance, transactions and credit members of a single
+     * line JSON object into fields, matching member names in place.
+     */
+    private boolean parseJson(int length) {
+
+        int seen = 0;
+        int found = 0;
+
+        for(int i=0; i<length && found < 3; i++) {
+
+            if(line[i] != '"') {
+                continue;
+            }
+
+            int field = matches(i + 1, length, BALANCE) ? 0 :
+                        matches(i + 1, length, TRANSACTIONS) ? 1 :
+                        matches(i + 1, length, CREDIT) ? 2 : -1;
+            if(field < 0) {
+                continue;
+            }
+
+            int colon = i + 1 + ((field == 0) ? BALANCE.length :
+                        (field == 1) ? TRANSACTIONS.length : CREDIT.length) + 1;
+            while(colon < length && line[colon] == ' ') {
+                colon++;
+            }
+            if(colon >= length || line[colon] != ':') {
+                continue;
+            }
+
+            parsePosition = colon + 1;
+            if(!parseInt(length)) {
+                return false;
+            }
+
+            fields[field] = parsedValue;
+            if((seen & (1 << field)) == 0) {
+                seen |= (1 << field);
+                found++;
+            }
+            i = parsePosition - 1;
+        }
+
+        return found == 3;
+    }
+
+    private boolean matches(int start, int length, byte[] name) {
+
+        if(start + name.length >= length || line[start + name.length] != '"') {
+            return false;
+        }
+        for(int i=0; i<name.length; i++) {
+            if(line[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Parses an integer at parsePosition, skipping surrounding spaces
+     * or quotes and truncating any fraction, into parsedValue.
+     */
+    private boolean parseInt(int length) {
+
+        while(parsePosition < length &&
+              (line[parsePosition] == ' ' || line[parsePosition] == '"')) {
+            parsePosition++;
+        }
+
+        boolean negative = false;
+        if(parsePosition < length && line[parsePosition] == '-') {
+            negative = true;
+            parsePosition++;
+        }
+
+        int start = parsePosition;
+        long value = 0;
+        while(parsePosition < length &&
+              line[parsePosition] >= '0' && line[parsePosition] <= '9') {
+            value = value * 10 + (line[parsePosition++] - '0');
+            if(value > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        if(parsePosition == start) {
+            return false;
+        }
+
+        if(parsePosition < length && line[parsePosition] == '.') {
+            parsePosition++;
+            while(parsePosition < length &&
+                  line[parsePosition] >= '0' && line[parsePosition] <= '9') {
+                parsePosition++;
+            }
+        }
+
+        parsedValue = (int) (negative ? -value : value);
+        return true;
+    }
+
+    /*
+     * Waits for a free slot within the in-flight limit, then scores the
+     * record on the bulk lane. Records shed by admission control are
+     * retried rather than dropped.
+     */
+    private void submit(int bal, int trans, int cred)
+                                        throws InterruptedException {
+
+        int slot;
+        ScoreCallback callback;
+
+        synchronized(this) {
+
+            while(running && inFlight >= limit()) {
+                wait(pollMillis);
+            }
+            if(!running) {
+                return;
+            }
+
+            slot = (int) ((nextWrite + inFlight) % capacity);
+            inFlight++;
+
+            balance[slot] = bal;
+            transactions[slot] = trans;
+            credit[slot] = cred;
+            submitted[slot] = Long.MAX_VALUE;
+            state[slot] = PENDING;
+            callback = callbacks[slot];
+        }
+
+        while(running &&
+              !fraudService.score(bal, trans, cred, callback, false)) {
+            Thread.sleep(Math.max(1, pollMillis / 10));
+        }
+
+        synchronized(this) {
+            if(state[slot] == PENDING && callbacks[slot] == callback) {
+                submitted[slot] = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private ScoreCallback newCallback(final int slot) {
+        return new ScoreCallback() {
+            public void onScore(FraudScore fraudScore,
+                                RTaskResult rTaskResult) {
+                complete(slot, this, fraudScore.score, fraudScore.success);
+            }
+        };
+    }
+
+    private int limit() {
+        return Math.min(capacity,
+                        Math.max(1, depth * fraudService.maxConcurrency()));
+    }
+
+    private void complete(int slot, ScoreCallback callback,
+                          double fraudScore, boolean scored) {
+
+        synchronized(this) {
+
+            if(state[slot] != PENDING || callbacks[slot] != callback) {
+                return;
+            }
+
+            score[slot] = fraudScore;
+            success[slot] = scored;
+            state[slot] = DONE;
+
+            if(slot == (int) (nextWrite % capacity)) {
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Writes scored records in feed order, flushing the sink whenever
+     * the next record in order is not yet scored.
+     */
+    private void write() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        StringBuilder text = new StringBuilder(64);
+
+        try {
+
+            while(true) {
+
+                int bal, trans, cred;
+                double fraudScore;
+                boolean scored;
+
+                if(!ready()) {
+                    /*
+                     * Flush outside the lock, then wait for the next
+                     * record in feed order.
+                     */
+                    flush(buffer);
+                    synchronized(this) {
+                        while(running && !ready()) {
+                            wait(pollMillis);
+                        }
+                    }
+                    if(!running) {
+                        break;
+                    }
+                }
+
+                synchronized(this) {
+
+                    int slot = (int) (nextWrite % capacity);
+
+                    bal = balance[slot];
+                    trans = transactions[slot];
+                    cred = credit[slot];
+                    fraudScore = score[slot];
+                    scored = success[slot];
+
+                    state[slot] = FREE;
+                    nextWrite++;
+                    inFlight--;
+                    notifyAll();
+                }
+
+                written++;
+                if(!scored) {
+                    failed++;
+                }
+
+                if(sink != null) {
+
+                    text.setLength(0);
+                    text.append(bal).append(',').append(trans).append(',')
+                        .append(cred).append(',');
+                    if(scored) {
+                        text.append(fraudScore);
+                    }
+                    text.append(',').append(scored).append('\n');
+
+                    if(buffer.remaining() < text.length()) {
+                        flush(buffer);
+                    }
+                    for(int i=0; i<text.length(); i++) {
+                        buffer.put((byte) text.charAt(i));
+                    }
+                }
+            }
+
+            flush(buffer);
+
+        } catch(InterruptedException iex) {
+        } catch(Exception ex) {
+            log.warn("FeedIngester: write ex=" + ex);
+        }
+    }
+
+    /*
+     * Returns true once the next record in feed order is scored, or
+     * overdue, in which case it is completed as failed. Its callback is
+     * replaced, so a late score is ignored rather than completing the
+     * next record to use the slot.
+     */
+    private synchronized boolean ready() {
+
+        int slot = (int) (nextWrite % capacity);
+
+        if(state[slot] == PENDING && timeout > 0 &&
+           System.currentTimeMillis() - submitted[slot] > timeout) {
+
+            score[slot] = 0.0;
+            success[slot] = false;
+            state[slot] = DONE;
+            callbacks[slot] = newCallback(slot);
+            timedOut++;
+            log.warn("FeedIngester: record " + balance[slot] + "," +
+                     transactions[slot] + "," + credit[slot] +
+                     " not scored within " + timeout + "ms.");
+        }
+
+        return state[slot] == DONE;
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+
+        if(sink == null || buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            sink.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+     * Tails file from the start. If the file is truncated, for example
+     * when rotated by copy, reading restarts from the beginning.
+     */
+    private FeedSource openFile(final File file) throws IOException {
+
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+        return new FeedSource() {
+
+            public int read(ByteBuffer buffer) throws IOException {
+
+                int count = channel.read(buffer);
+                if(count <= 0) {
+                    if(channel.size() < channel.position()) {
+                        log.info("FeedIngester: " + file +
+                                 " truncated, reading from the start.");
+                        channel.position(0);
+                    }
+                    return 0;
+                }
+                return count;
+            }
+
+            public void close() {
+                try {
+                    channel.close();
+                } catch(IOException ioex) {}
+            }
+        };
+    }
+
+    /*
+     * Reads from host:port, reconnecting whenever the connection fails
+     * or is closed by the feed.
+     */
+    private FeedSource openSocket(final String address) {
+
+        int colon = address.lastIndexOf(':');
+        final InetSocketAddress endpoint =
+            new InetSocketAddress(address.substring(0, colon),
+                                  Integer.parseInt(address.substring(colon + 1)));
+
+        return new FeedSource() {
+
+            private SocketChannel channel = null;
+
+            public int read(ByteBuffer buffer) {
+
+                try {
+
+                    if(channel == null) {
+                        channel = SocketChannel.open(endpoint);
+                        log.info("FeedIngester: connected to " + endpoint + ".");
+                    }
+
+                    int count = channel.read(buffer);
+                    if(count < 0) {
+                        log.info("FeedIngester: " + endpoint + " closed.");
+                        close();
+                        return 0;
+                    }
+                    return count;
+
+                } catch(IOException ioex) {
+                    if(running) {
+                        log.warn("FeedIngester: " + endpoint + " ex=" + ioex);
+                    }
+                    close();
+                    return 0;
+                }
+            }
+
+            public void close() {
+                if(channel != null) {
+                    try {
+                        channel.close();
+                    } catch(IOException ioex) {}
+                    channel = null;
+                }
+            }
+        };
+    }
+}
@@ -23,6 +23,10 @@ import com.revo.deployr.rbroker.example.model.RuntimeStats;
 import com.revo.deployr.rbroker.example.model.ClientMessage;
 import com.revo.deployr.rbroker.example.model.ClientAlert;
 import com.revo.deployr.rbroker.example.model.ClientWarn;
+import com.revo.deployr.rbroker.example.model.LatencyPercentiles;
+import com.revo.deployr.rbroker.example.model.LaneStats;
+import com.revo.deployr.rbroker.example.model.HedgeStats;
+import com.revo.deployr.rbroker.example.model.Readiness;
 
 import com.revo.deployr.client.broker.*;
 import com.revo.deployr.client.broker.config.*;
@@ -36,32 +40,397 @@ import com.revo.deployr.client.factory.RBrokerFactory;
 import com.revo.deployr.client.factory.RTaskFactory;
 import com.revo.deployr.client.factory.RDataFactory;
 
+import com.revo.deployr.rbroker.example.util.LatencyHistogram;
 import com.revo.deployr.rbroker.example.util.RBrokerStatsHelper;
+import com.revo.deployr.rbroker.example.util.TaskAudit;
+import com.revo.deployr.rbroker.example.util.TaskEvents;
 
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 
 @Service
 public class FraudService
-            implements RTaskListener, RBrokerListener {
+            implements RTaskListener, RBrokerListener,
+                       ScoreBatcher.BatchHandler {
 
     private static Logger log = Logger.getLogger(FraudService.class);
 
-    private final SimpMessagingTemplate simpMessagingTemplate;
-    private RBroker rBroker = null;
+    private final ScorePublisher scorePublisher;
+    private volatile RBroker rBroker = null;
+    private final Set<RBroker> drainingBrokers =
+        Collections.synchronizedSet(new HashSet<RBroker>());
     private PooledBrokerConfig brokerConfig = null;
     private int lastAllocatedPoolSize = 0;
+    private ScoreBatcher scoreBatcher = null;
+    private ScoreCache scoreCache = null;
+    private ScoreLattice scoreLattice = null;
+    private TreeScorer treeScorer = null;
+    private int verifyInterval = 0;
+    private double verifyTolerance = 1e-6;
+    private final AtomicLong nativeScores = new AtomicLong();
+    private final AtomicLong verifiedScores = new AtomicLong();
+    private final AtomicLong mismatchedScores = new AtomicLong();
+    private static final long LATENCY_WINDOW =
+                                Long.getLong("latency.window", 60000L);
+    private final LatencyHistogram codeExecution =
+                                new LatencyHistogram(LATENCY_WINDOW, 6);
+    private final LatencyHistogram serverOverhead =
+                                new LatencyHistogram(LATENCY_WINDOW, 6);
+    private final LatencyHistogram networkLatency =
+                                new LatencyHistogram(LATENCY_WINDOW, 6);
+    private final AdmissionControl admissionControl =
+        new AdmissionControl(Integer.getInteger("admission.queue", 32));
+    private final Map<RTask, ScoreCallback[]> pendingCallbacks =
+        Collections.synchronizedMap(new IdentityHashMap<RTask, ScoreCallback[]>());
+    /*
+     * RBroker each in-flight RTask was submitted to, claimed by the
+     * first of onTaskCompleted/onTaskError, or by a drain timeout.
+     */
+    private final Map<RTask, RBroker> taskBrokers =
+        Collections.synchronizedMap(new IdentityHashMap<RTask, RBroker>());
+    /*
+     * A -Dpriority.reserve share of pool concurrency is kept free of
+     * bulk RTasks for priority RTasks.
+     */
+    private final PriorityLanes priorityLanes =
+        new PriorityLanes(Double.parseDouble(
+                System.getProperty("priority.reserve", "0")), LATENCY_WINDOW);
+    private final TaskEvents taskEvents = TaskEvents.get();
+    private CompletionDispatcher completionDispatcher = null;
+    private CircuitBreaker circuitBreaker = null;
+    private TaskHedger taskHedger = null;
+    private PoolAutoscaler poolAutoscaler = null;
+    private PoolWarmup poolWarmup = null;
+    /*
+     * Time the server became ready to score, or 0.
+     */
+    private volatile long readyTime = 0L;
+    /*
+     * Time the pool was last built, or 0.
+     */
+    private volatile long poolBuiltTime = 0L;
+    /*
+     * Half-open trial RTasks submitted by the CircuitBreaker.
+     */
+    private final Set<RTask> probeTasks = Collections.newSetFromMap(
+        Collections.synchronizedMap(new IdentityHashMap<RTask, Boolean>()));
+    private TaskAudit taskAudit = null;
+    private final WorkloadGenerator workload =
+                            SyntheticWorkload.fromSystemProperties();
+    /*
+     * Submit times, in nanoseconds, of RTasks submitted while
+     * TaskEvents are being recorded.
+     */
+    private final Map<RTask, Long> submitTimes =
+        Collections.synchronizedMap(new IdentityHashMap<RTask, Long>());
     private static final String FRAUDMSGTOPIC = "/topic/fraud";
 
     @Autowired
-    public FraudService(SimpMessagingTemplate simpMessagingTemplate) {
-        this.simpMessagingTemplate = simpMessagingTemplate;
+    public FraudService(SimpMessagingTemplate simpMessagingTemplate,
+                        ScoreSubscriptions scoreSubscriptions) {
+
+        /*
+         * FraudScore and RuntimeStats messages are coalesced and pushed
+         * once every -Dpublish.interval milliseconds, when greater than 0,
+         * in FraudScoreBatch messages of at most -Dpublish.batch scores,
+         * filtered per subscription by scoreSubscriptions.
+         */
+        this.scorePublisher =
+            new ScorePublisher(simpMessagingTemplate, FRAUDMSGTOPIC,
+                               scoreSubscriptions,
+                               Long.getLong("publish.interval", 0L),
+                               Integer.getInteger("publish.batch", 500));
+
+        /*
+         * Micro-batching is enabled when -Dbatch.size is greater than 1,
+         * in which case up to batch.size accounts, pending for no longer
+         * than batch.wait milliseconds, are scored by a single RTask.
+         */
+        int batchSize = Integer.getInteger("batch.size", 1);
+        if(batchSize > 1) {
+            long batchWait = Long.getLong("batch.wait", 10L);
+            scoreBatcher = new ScoreBatcher(this, batchSize, batchWait);
+            log.info("Score micro-batching enabled, batch.size=" +
+                        batchSize + ", batch.wait=" + batchWait + "ms.");
+        }
+
+        /*
+         * Score caching is enabled when -Dcache.size is greater than 0,
+         * in which case up to cache.size account scores are retained.
+         */
+        int cacheSize = Integer.getInteger("cache.size", 0);
+        if(cacheSize > 0) {
+            scoreCache = new ScoreCache(cacheSize);
+            log.info("Score cache enabled, cache.size=" + cacheSize + ".");
+        }
+
+        /*
+         * Lattice serving mode is enabled when -Dlattice.file names a
+         * complete lattice materialized from the model at -Dlattice.model,
+         * in which case scores are answered without touching DeployR.
+         */
+        String latticeFile = System.getProperty("lattice.file");
+        if(latticeFile != null) {
+            try {
+                File modelFile =
+                    new File(System.getProperty("lattice.model",
+                                                "analytics/fraudModel.rData"));
+                scoreLattice = ScoreLattice.openForRead(new File(latticeFile),
+                                    ScoreLattice.fingerprint(modelFile));
+                log.info("Score lattice serving enabled, lattice.file=" +
+                                                        latticeFile + ".");
+            } catch(Exception ex) {
+                log.warn("FraudService: score lattice unavailable, " +
+                                                        "ex=" + ex);
+            }
+        }
+
+        /*
+         * Completion dispatch is enabled when -Ddispatch.threads is
+         * greater than 0, or by -Ddispatch.virtual=true, in which case
+         * RTask completions are handed off the RBroker threads and
+         * processed on dispatch.threads threads, or virtual threads
+         * where available.
+         */
+        int dispatchThreads = Integer.getInteger("dispatch.threads", 0);
+        boolean dispatchVirtual = Boolean.getBoolean("dispatch.virtual");
+        if(dispatchThreads > 0 || dispatchVirtual) {
+            int drainers = (dispatchThreads > 0) ? dispatchThreads :
+                            Runtime.getRuntime().availableProcessors();
+            completionDispatcher = new CompletionDispatcher(this,
+                CompletionDispatcher.buildExecutor(drainers, dispatchVirtual),
+                drainers, LATENCY_WINDOW);
+            log.info("Completion dispatch enabled, dispatch.threads=" +
+                        drainers + ".");
+        }
+
+        /*
+         * Binary task auditing is enabled when -Daudit.dir names a
+         * directory, in which case RTask results are no longer logged
+         * per task, except on failure. One in every -Daudit.sample
+         * successful RTasks is audited, into a ring of -Daudit.segments
+         * memory-mapped segments of -Daudit.segment.size bytes.
+         */
+        String auditDir = System.getProperty("audit.dir");
+        if(auditDir != null) {
+            try {
+                taskAudit = new TaskAudit(new File(auditDir),
+                    Integer.getInteger("audit.segments", 8),
+                    Long.getLong("audit.segment.size", 64L * 1024 * 1024),
+                    Integer.getInteger("audit.sample", 1),
+                    Integer.getInteger("audit.queue", 65536));
+                log.info("Task audit enabled, audit.dir=" + auditDir + ".");
+            } catch(Exception ex) {
+                log.warn("FraudService: task audit unavailable, ex=" + ex);
+            }
+        }
+
+        /*
+         * The circuit breaker is enabled when -Dbreaker.failure.rate is
+         * greater than 0, in which case new work is refused at once
+         * while the RBroker runtime is disconnected, after a runtime
+         * error, or once breaker.failure.rate of the last breaker.window
+         * RTasks failed. The pool is then rebuilt in the background,
+         * backing off from breaker.backoff to breaker.backoff.max
+         * milliseconds, and breaker.probes trial RTasks must succeed
+         * before new work is accepted again.
+         */
+        double failureRate = Double.parseDouble(
+                        System.getProperty("breaker.failure.rate", "0"));
+        if(failureRate > 0) {
+            circuitBreaker = new CircuitBreaker(new CircuitBreaker.Recovery() {
+
+                public boolean reconnect() {
+                    return reconnectPool();
+                }
+
+                public void probe(int probes) {
+                    submitProbes(probes);
+                }
+
+                public void stateChanged(CircuitBreaker.State state,
+                                         String reason) {
+                    alertCircuitState(state, reason);
+                }
+            },
+            Integer.getInteger("breaker.window", 20), failureRate,
+            Long.getLong("breaker.backoff", 1000L),
+            Long.getLong("breaker.backoff.max", 60000L),
+            Integer.getInteger("breaker.probes", 3),
+            Long.getLong("breaker.probe.timeout", 30000L));
+            log.info("Circuit breaker enabled, breaker.failure.rate=" +
+                        failureRate + ".");
+        }
+
+        /*
+         * Hedging is enabled when -Dhedge.percentile is greater than 0,
+         * in which case an RTask outstanding for longer than that
+         * percentile of recent RTask times, and at least hedge.min
+         * milliseconds, is duplicated on another R session. At most a
+         * -Dhedge.budget fraction of RTasks are hedged.
+         */
+        double hedgePercentile = Double.parseDouble(
+                        System.getProperty("hedge.percentile", "0"));
+        if(hedgePercentile > 0) {
+            taskHedger = new TaskHedger(new TaskHedger.HedgeSubmitter() {
+
+                public RTask duplicate(RTask rTask) {
+                    return duplicateTask(rTask);
+                }
+
+                public RTaskToken submit(RTask hedge, boolean priority) {
+                    return submitHedge(hedge, priority);
+                }
+
+                public void cancelled(RTask loser) {
+                    taskBrokers.remove(loser);
+                }
+            },
+            hedgePercentile, Long.getLong("hedge.min", 10L),
+            Double.parseDouble(System.getProperty("hedge.budget", "0.05")),
+            Long.getLong("hedge.tick", 5L), LATENCY_WINDOW);
+            log.info("RTask hedging enabled, hedge.percentile=" +
+                        hedgePercentile + ".");
+        }
+
+        /*
+         * Pool autoscaling is enabled when -Dautoscale.max is greater
+         * than 0, in which case the pool is resized between autoscale.min
+         * and autoscale.max R sessions, once every autoscale.interval
+         * milliseconds, to hold autoscale.utilisation and, when greater
+         * than 0, an autoscale.latency p99 target in milliseconds.
+         */
+        int autoscaleMax = Integer.getInteger("autoscale.max", 0);
+        if(autoscaleMax > 0) {
+            poolAutoscaler = new PoolAutoscaler(new PoolAutoscaler.Pool() {
+
+                public boolean isAvailable() {
+                    return rBroker != null && brokerConfig != null &&
+                           !isCircuitOpen();
+                }
+
+                public int getPoolSize() {
+                    return brokerConfig.maxConcurrentTaskLimit;
+                }
+
+                public int maxConcurrency() {
+                    return FraudService.this.maxConcurrency();
+                }
+
+                public int getOutstanding() {
+                    return admissionControl.getOutstanding();
+                }
+
+                public long lastResized() {
+                    return poolBuiltTime;
+                }
+
+                public long getLatency() {
+                    long latency = priorityLanes.getPriorityLane()
+                                            .getLatency().percentile(99);
+                    return (latency > 0) ? latency :
+                        priorityLanes.getBulkLane().getLatency().percentile(99);
+                }
+
+                public boolean resize(int poolSize) {
+                    return buildPool(poolSize);
+                }
+
+                public void decided(String msg) {
+                    log.info(msg);
+                    alertClient(msg, null, false);
+                }
+            },
+            Integer.getInteger("autoscale.min", 1), autoscaleMax,
+            Double.parseDouble(
+                    System.getProperty("autoscale.utilisation", "0.7")),
+            Long.getLong("autoscale.latency", 0L),
+            Double.parseDouble(
+                    System.getProperty("autoscale.hysteresis", "0.2")),
+            Long.getLong("autoscale.cooldown.up", 30000L),
+            Long.getLong("autoscale.cooldown.down", 300000L),
+            Long.getLong("autoscale.interval", 10000L));
+            log.info("Pool autoscaling enabled, autoscale.max=" +
+                        autoscaleMax + ".");
+        }
+
+        /*
+         * Startup warm-up is enabled when -Dwarmup.pool is greater than
+         * 0, in which case a pool of warmup.pool R sessions is built at
+         * startup, warmup.java accounts are scored in-process and
+         * warmup.rounds RTasks per R session are run, for at most
+         * warmup.timeout milliseconds, before the server reports ready.
+         */
+        int warmupPool = Integer.getInteger("warmup.pool", 0);
+        if(warmupPool > 0) {
+            poolWarmup = new PoolWarmup(new PoolWarmup.Target() {
+
+                public boolean buildPool(int poolSize) {
+                    return FraudService.this.buildPool(poolSize);
+                }
+
+                public int maxConcurrency() {
+                    return FraudService.this.maxConcurrency();
+                }
+
+                public void warmJava(int bal, int trans, int credit) {
+                    warmScore(bal, trans, credit);
+                }
+
+                public boolean warmTask(int bal, int trans, int credit,
+                                        ScoreCallback callback) {
+                    return submit(buildTask(bal, trans, credit),
+                                  new ScoreCallback[] { callback },
+                                  true) != null;
+                }
+
+                public void warmed(PoolWarmup.State state) {
+                    if(state == PoolWarmup.State.READY) {
+                        markReady();
+                    }
+                }
+            },
+            warmupPool,
+            Integer.getInteger("warmup.rounds", 2),
+            Integer.getInteger("warmup.java", 10000),
+            Long.getLong("warmup.timeout", 120000L));
+            log.info("Startup warm-up enabled, warmup.pool=" +
+                        warmupPool + ".");
+        }
+
+        /*
+         * Native scoring is enabled by -Dscorer=native, in which case
+         * scores are computed in-process by a TreeScorer loaded from
+         * -Dscorer.model. One in every -Dscorer.verify native scores
+         * is also scored on RBroker and compared within -Dscorer.tolerance.
+         * Unsupported model exports fall back to scoring on RBroker.
+         */
+        if("native".equals(System.getProperty("scorer"))) {
+            String treeFile = System.getProperty("scorer.model",
+                                            "analytics/fraudModel.tree");
+            try {
+                treeScorer = TreeScorer.load(new File(treeFile));
+                verifyInterval = Integer.getInteger("scorer.verify", 0);
+                verifyTolerance = Double.parseDouble(
+                    System.getProperty("scorer.tolerance", "1e-6"));
+                log.info("Native scoring enabled, scorer.model=" +
+                            treeFile + ", scorer.verify=" +
+                            verifyInterval + ".");
+            } catch(Exception ex) {
+                log.warn("FraudService: native scorer unavailable, " +
+                                    "falling back to RBroker, ex=" + ex);
+            }
+        }
     }
 
     /*
@@ -70,262 +439,1256 @@ public class FraudService
      * buildPool(int poolSize)
      *
      * Supports: FraudController POST:/pool/init/{size}.
+     *
+     * Returns false if the pool could not be built. A resize to the
+     * requested size of the current pool is skipped, as the new pool
+     * would be built alongside the current pool, needing grid capacity
+     * for both, only to replace it with a pool of the same size.
+     */
+    public boolean buildPool(int poolSize) {
+        return buildPool(poolSize, false);
+    }
+
+    /*
+     * Rebuilds the current pool even at the same size when rebuild.
+     */
+    private synchronized boolean buildPool(int poolSize, boolean rebuild) {
+
+        if(!rebuild && rBroker != null && brokerConfig != null &&
+           brokerConfig.maxConcurrentTaskLimit == poolSize) {
+
+            log.info("RBroker pool already requested with " + poolSize +
+                     " R session(s), resize skipped.");
+            /*
+             * Push RuntimeStats message over STOMP Web Socket to clients
+             * listening on FRAUDMSGTOPIC, so the requesting client
+             * still sees the current pool.
+             */
+            scorePublisher.publish(
+                populateRuntimeStats(new RuntimeStats(), null));
+            return true;
+        }
+
+        try {
+
+            long buildStart = System.currentTimeMillis();
+            RBroker oldBroker = rBroker;
+
+            if(oldBroker == null) {
+
+                String msg = "RBroker pool initializing on " +
+                             System.getProperty("endpoint") +
+                             ". Requested " + poolSize +
+                             " R session(s) in the pool. " +
+                             "This may take some time. Please wait.";
+                alertClient(msg, null, false);
+
+                /*
+                 * Create initial RBroker instance.
+                 */
+                brokerConfig = buildBrokerConfig(poolSize);
+                RBroker newBroker = buildBroker(brokerConfig);
+                attach(newBroker);
+                lastAllocatedPoolSize = newBroker.maxConcurrency();
+                rBroker = newBroker;
+
+                log.info("RBroker pool initialized with " +
+                    lastAllocatedPoolSize + " R sessions.");
+
+            } else {
+
+                String msg = "RBroker pool resizing on " +
+                             System.getProperty("endpoint") +
+                             ". Requested " + poolSize +
+                             " R session(s) in the pool. Scoring " +
+                             "continues on the current pool until " +
+                             "the new pool is ready.";
+                alertClient(msg, null, false);
+
+                /*
+                 * Create the new RBroker instance alongside the old
+                 * instance, which keeps scoring until the switch. Grid
+                 * resources must not be released by the new pool, as
+                 * that would release the R sessions of the old pool.
+                 */
+                PooledBrokerConfig newConfig = buildBrokerConfig(poolSize);
+                newConfig.poolCreationOptions.releaseGridResources = false;
+                RBroker newBroker = buildBroker(newConfig);
+                attach(newBroker);
+
+                /*
+                 * Switch new submissions over, then release the old
+                 * instance once its in-flight RTasks have completed.
+                 */
+                brokerConfig = newConfig;
+                lastAllocatedPoolSize = newBroker.maxConcurrency();
+                rBroker = newBroker;
+                drain(oldBroker);
+
+                log.info("RBroker pool resized to " +
+                    lastAllocatedPoolSize + " R sessions.");
+            }
+            poolBuiltTime = System.currentTimeMillis();
+
+            if(poolWarmup == null ||
+               poolWarmup.getState() == PoolWarmup.State.FAILED) {
+                /*
+                 * Without a warm-up, or after a failed warm-up, the
+                 * server is ready once a pool is built.
+                 */
+                markReady();
+            }
+
+            taskEvents.poolBuilt(poolSize, lastAllocatedPoolSize,
+                                 oldBroker != null,
+                                 System.currentTimeMillis() - buildStart);
+
+            RuntimeStats runtimeStats = new RuntimeStats();
+            runtimeStats = populateRuntimeStats(runtimeStats, null);
+            /*
+             * Push RuntimeStats message over STOMP Web Socket to clients
+             * listening on FRAUDMSGTOPIC.
+             */
+            scorePublisher.publish(runtimeStats);
+            return true;
+
+        } catch(Exception ex) {
+            log.warn("FraudService: init ex=" + ex);
+            String msg = "RBroker pool initialization failed. Is " +
+                System.getProperty("endpoint") +
+                " a valid DeployR server endpoint?" +
+                " Using valid user credentials?";
+            if(rBroker != null) {
+                msg += " Scoring continues on the current pool.";
+            }
+            alertClient(msg, ex.getMessage(), true);
+            return false;
+        }
+    }
+
+    /*
+     * Registers for RTask completions from broker, through the
+     * CompletionDispatcher when enabled, and for its runtime errors and
+     * stats only while it is the current RBroker, so a draining broker
+     * neither reports stale pool figures to clients nor opens the
+     * CircuitBreaker.
+     */
+    private void attach(final RBroker broker) {
+
+        broker.addTaskListener((completionDispatcher != null) ?
+                               completionDispatcher : this);
+        broker.addBrokerListener(new RBrokerListener() {
+
+            public void onRuntimeError(Throwable throwable) {
+                if(broker == rBroker) {
+                    FraudService.this.onRuntimeError(throwable);
+                } else {
+                    log.warn("FraudService: draining RBroker runtime " +
+                             "error=" + throwable);
+                }
+            }
+
+            public void onRuntimeStats(RBrokerRuntimeStats stats,
+                                       int maxConcurrency) {
+                if(broker == rBroker) {
+                    FraudService.this.onRuntimeStats(stats, maxConcurrency);
+                }
+            }
+        });
+    }
+
+    /*
+     * Shuts down a replaced RBroker once it is idle, or after
+     * -Dpool.drain.timeout milliseconds. RTasks still queued or
+     * executing at the timeout are failed, once the CompletionDispatcher
+     * has delivered the completions the replaced instance handed it.
+     */
+    private void drain(final RBroker broker) {
+
+        final long drainTimeout = Long.getLong("pool.drain.timeout", 60000L);
+        drainingBrokers.add(broker);
+
+        Thread drainer = new Thread(new Runnable() {
+            public void run() {
+
+                /*
+                 * Sleep first, so submissions that read the old
+                 * instance just before the switch reach its queue.
+                 */
+                long deadline = System.currentTimeMillis() + drainTimeout;
+                boolean idle = false;
+                try {
+                    do {
+                        Thread.sleep(100);
+                        idle = broker.isIdle();
+                    } while(!idle && System.currentTimeMillis() < deadline);
+                } catch(InterruptedException iex) {}
+
+                broker.shutdown();
+                drainingBrokers.remove(broker);
+                log.info("RBroker replaced pool released.");
+
+                /*
+                 * Completions of an idle instance may still be queued on
+                 * the CompletionDispatcher, they are delivered as usual.
+                 */
+                if(idle) {
+                    return;
+                }
+
+                if(completionDispatcher != null) {
+                    try {
+                        completionDispatcher.awaitQueued(5000);
+                    } catch(InterruptedException iex) {}
+                }
+
+                /*
+                 * Fail RTasks that never completed on the replaced
+                 * instance, releasing their lane, callbacks and
+                 * cache waiters.
+                 */
+                List<RTask> discarded = new ArrayList<RTask>();
+                synchronized(taskBrokers) {
+                    for(Map.Entry<RTask, RBroker> entry :
+                                            taskBrokers.entrySet()) {
+                        if(entry.getValue() == broker) {
+                            discarded.add(entry.getKey());
+                        }
+                    }
+                }
+
+                if(!discarded.isEmpty()) {
+                    log.warn("RBroker drain timed out, discarded " +
+                             discarded.size() + " RTask(s).");
+                    for(RTask rTask : discarded) {
+                        onTaskError(rTask, new RBrokerException(
+                            "RTask discarded when the replaced RBroker " +
+                            "pool was released."));
+                    }
+                }
+            }
+        }, "rbroker-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /*
+     * Builds the RBroker for brokerConfig. With -Dbroker=simulated an
+     * in-process SimulatedRBroker, configured by the simulated.* system
+     * properties, stands in for a pooled task broker on DeployR.
+     *
+     * When the endpoint is a comma-separated list of DeployR endpoints,
+     * a pool of the same size is built on each endpoint and RTasks are
+     * sharded across them by a ShardedRBroker, routing by -Dshard.routing
+     * (outstanding or latency). Endpoints whose pool cannot be built
+     * are left out of the ShardedRBroker.
+     */
+    public static RBroker buildBroker(PooledBrokerConfig brokerConfig)
+                                                    throws Exception {
+
+        String[] endpoints = brokerConfig.deployrEndpoint.split(",");
+        if(endpoints.length > 1) {
+
+            List<String> shardEndpoints = new ArrayList<String>();
+            List<RBroker> shardBrokers = new ArrayList<RBroker>();
+            Exception lastException = null;
+
+            for(String endpoint : endpoints) {
+
+                PooledBrokerConfig shardConfig =
+                    buildBrokerConfig(endpoint.trim(),
+                                      brokerConfig.maxConcurrentTaskLimit);
+                shardConfig.poolCreationOptions.releaseGridResources =
+                    brokerConfig.poolCreationOptions.releaseGridResources;
+
+                try {
+                    shardBrokers.add(buildBroker(shardConfig));
+                    shardEndpoints.add(endpoint.trim());
+                } catch(Exception ex) {
+                    lastException = ex;
+                    log.warn("FraudService: RBroker pool unavailable on " +
+                                                endpoint + ", ex=" + ex);
+                }
+            }
+
+            if(shardBrokers.isEmpty()) {
+                throw lastException;
+            }
+
+            ShardedRBroker.Routing routing =
+                ShardedRBroker.Routing.valueOf(System.getProperty(
+                    "shard.routing", "outstanding").toUpperCase());
+            return new ShardedRBroker(shardEndpoints, shardBrokers, routing,
+                                      Long.getLong("shard.retry", 5000L));
+        }
+
+        if("simulated".equals(System.getProperty("broker"))) {
+            log.info("RBroker simulated in-process, no DeployR server used.");
+            return SimulatedRBroker.fromSystemProperties(
+                                    brokerConfig.maxConcurrentTaskLimit);
+        }
+
+        return RBrokerFactory.pooledTaskBroker(brokerConfig);
+    }
+
+    /*
+     * Builds the PooledBrokerConfig for a pool of poolSize R sessions,
+     * each preloaded with the fraud model, from the DeployR endpoint,
+     * credentials and repository system properties.
+     */
+    public static PooledBrokerConfig buildBrokerConfig(int poolSize) {
+        return buildBrokerConfig(System.getProperty("endpoint"), poolSize);
+    }
+
+    public static PooledBrokerConfig buildBrokerConfig(String endpoint,
+                                                       int poolSize) {
+
+        RAuthentication rAuth =
+            new RBasicAuthentication(System.getProperty("username"),
+                                     System.getProperty("password"));
+
+        PoolCreationOptions poolOptions = new PoolCreationOptions();
+
+        PoolPreloadOptions preloadOptions = 
+                                new PoolPreloadOptions();
+        preloadOptions.filename = System.getProperty("repository-model");
+        preloadOptions.directory = System.getProperty("repository-directory");
+        preloadOptions.author = System.getProperty("username");
+        poolOptions.preloadWorkspace = preloadOptions;
+        boolean allowSelfSigned = 
+            Boolean.valueOf(System.getProperty("allow.SelfSignedSSLCert"));
+
+        /*
+         * Ensure releaseGridResources property is enabled
+         * so server-side grid resource management will auto
+         * clear prior pool resources before creating a new
+         * pool on a refresh.
+         */
+        poolOptions.releaseGridResources = true;
+
+        PooledBrokerConfig brokerConfig =
+                            new PooledBrokerConfig(endpoint,
+                                                   rAuth,
+                                                   poolSize,
+                                                   poolOptions);
+        brokerConfig.allowSelfSignedSSLCert = allowSelfSigned;
+
+        return brokerConfig;
+    }
+
+    /*
+     * Service Methods:
+     *
+     * score(int bal, int trans, int credit)
+     * buildTask()
+     * submitTask(RTask rTask)
+     *
+     * Supports: FraudController GET:/fraud/score/{tasks}.
+     */
+    public boolean score(int bal, int trans, int credit) {
+        return score(bal, trans, credit, null, false);
+    }
+
+    public boolean score(int bal, int trans, int credit,
+                         ScoreCallback callback) {
+        return score(bal, trans, credit, callback, true);
+    }
+
+    /*
+     * Service Method:
+     *
+     * score(int bal, int trans, int credit, ScoreCallback callback,
+     *       boolean priority)
+     *
+     * Scores a single account, the FraudScore is pushed to clients
+     * and, when not null, passed to callback once available. Returns
+     * false, without calling callback, if the account was rejected
+     * because too many RTasks are already outstanding. A priority
+     * account is scored by its own RTask, submitted ahead of bulk
+     * RTasks, rather than joining the next micro-batch.
+     *
+     * Supports: FraudController GET:/fraud/score/{bal}/{trans}/{credit}.
+     */
+    public boolean score(int bal, int trans, int credit,
+                         ScoreCallback callback, boolean priority) {
+
+        if(scoreLattice != null &&
+           ScoreLattice.inDomain(bal, trans, credit)) {
+
+            completeScore(bal, trans, credit,
+                          scoreLattice.score(bal, trans, credit), callback);
+            return true;
+        }
+
+        if(treeScorer != null) {
+
+            completeScore(bal, trans, credit,
+                          treeScorer.score(bal, trans, credit), callback);
+
+            long scored = nativeScores.incrementAndGet();
+            if(verifyInterval > 0 && scored % verifyInterval == 0) {
+                /*
+                 * Verification RTask, completed by verifyFraudScores.
+                 */
+                submit(buildTask(bal, trans, credit));
+            }
+            return true;
+        }
+
+        if(scoreCache != null) {
+
+            int key = ScoreCache.key(bal, trans, credit);
+
+            Double cached = scoreCache.get(key);
+            if(cached != null) {
+                completeScore(bal, trans, credit, cached, callback);
+                return true;
+            }
+
+            if(scoreCache.join(key, callback) == ScoreCache.Miss.JOINED) {
+                /*
+                 * Account is already being scored, completed by
+                 * completeFraudScores when that RTask completes.
+                 */
+                return true;
+            }
+        }
+
+        if((circuitBreaker != null && !circuitBreaker.allow()) ||
+           !admissionControl.admit(maxConcurrency())) {
+
+            if(scoreCache != null) {
+                /*
+                 * Fail any requests that joined this account as leader.
+                 */
+                failScore(bal, trans, credit, null);
+            }
+            return false;
+        }
+
+        if(scoreBatcher != null && !priority) {
+            /*
+             * Account is scored as part of the next vectorized
+             * RTask flushed by the ScoreBatcher, which is counted as
+             * outstanding when submitted, so the account does not hold
+             * on to its reserved slot.
+             */
+            admissionControl.release();
+            scoreBatcher.add(bal, trans, credit, callback);
+        } else {
+            RTask rTask = buildTask(bal, trans, credit);
+            if(rTask == null) {
+                /*
+                 * Fail the request, and any requests that joined this
+                 * account as leader, without pushing a FraudScore to
+                 * clients.
+                 */
+                admissionControl.release();
+                failScore(bal, trans, credit, callback);
+                return true;
+            }
+            submit(rTask,
+                   (callback != null) ? new ScoreCallback[] { callback } : null,
+                   priority, true);
+        }
+        return true;
+    }
+
+    public RTask buildTask() {
+
+        int[] account = new int[3];
+        workload.next(account);
+
+        return buildTask(account[0], account[1], account[2]);
+    }
+
+    /*
+     * Source of demo account data, see SyntheticWorkload.
+     */
+    public WorkloadGenerator getWorkload() {
+        return workload;
+    }
+
+    public RTask buildTask(int bal, int trans, int credit) {
+
+        RTask rTask = null;
+
+        try {
+
+            PooledTaskOptions taskOptions = new PooledTaskOptions();
+            taskOptions.routputs = Arrays.asList("x");
+
+            taskOptions.rinputs = Arrays.asList(
+                (RData) RDataFactory.createNumeric("bal", bal),
+                (RData) RDataFactory.createNumeric("trans", trans),
+                (RData) RDataFactory.createNumeric("credit", credit)
+            );
+
+            rTask = RTaskFactory.pooledTask(System.getProperty("repository-script"),
+                                            System.getProperty("repository-directory"),
+                                            System.getProperty("username"),
+                                            null, taskOptions);
+
+            taskEvents.taskBuilt(1, bal, trans, credit);
+
+        } catch(Exception ex) {
+            log.warn("FraudController: buildTask, " +
+                                                    "ex=" + ex);
+        }
+
+        return rTask;
+    }
+
+    /*
+     * Builds a single RTask that scores size accounts at once. The
+     * inputs are passed as numeric vectors, on which predict() in
+     * ccFraudScore.R is already vectorized, so the R script
+     * returns a vector of scores in input order.
+     */
+    public RTask buildBatchTask(int[] bal, int[] trans,
+                                int[] credit, int size) {
+
+        RTask rTask = null;
+
+        try {
+
+            PooledTaskOptions taskOptions = new PooledTaskOptions();
+            taskOptions.routputs = Arrays.asList("x");
+
+            List<Double> balVector = new ArrayList<Double>(size);
+            List<Double> transVector = new ArrayList<Double>(size);
+            List<Double> creditVector = new ArrayList<Double>(size);
+            for(int i=0; i<size; i++) {
+                balVector.add((double) bal[i]);
+                transVector.add((double) trans[i]);
+                creditVector.add((double) credit[i]);
+            }
+
+            taskOptions.rinputs = Arrays.asList(
+                (RData) RDataFactory.createNumericVector("bal", balVector),
+                (RData) RDataFactory.createNumericVector("trans", transVector),
+                (RData) RDataFactory.createNumericVector("credit", creditVector)
+            );
+
+            rTask = RTaskFactory.pooledTask(System.getProperty("repository-script"),
+                                            System.getProperty("repository-directory"),
+                                            System.getProperty("username"),
+                                            null, taskOptions);
+
+            taskEvents.taskBuilt(size, bal[0], trans[0], credit[0]);
+
+        } catch(Exception ex) {
+            log.warn("FraudService: buildBatchTask, " +
+                                                    "ex=" + ex);
+        }
+
+        return rTask;
+    }
+
+    /*
+     * ScoreBatcher BatchHandler Implementation.
+     */
+    public void onBatch(int[] bal, int[] trans, int[] credit,
+                        ScoreCallback[] callbacks, int size) {
+
+        boolean hasCallbacks = false;
+        for(int i=0; i<size && !hasCallbacks; i++) {
+            hasCallbacks = (callbacks[i] != null);
+        }
+
+        submit(buildBatchTask(bal, trans, credit, size),
+               hasCallbacks ? callbacks : null);
+    }
+
+    public void submit(RTask rTask) {
+        submit(rTask, null, false);
+    }
+
+    public RTaskToken submit(RTask rTask, ScoreCallback[] callbacks) {
+        return submit(rTask, callbacks, false);
+    }
+
+    /*
+     * Submits rTask, the callbacks, when not null, are indexed by the
+     * position of each account scored by rTask and are correlated with
+     * the completion of the RTaskToken in onTaskCompleted/onTaskError.
+     * Returns null if rTask was not submitted, or was deferred by
+     * PriorityLanes until a bulk RTask completes.
+     */
+    public RTaskToken submit(RTask rTask, ScoreCallback[] callbacks,
+                             boolean priority) {
+        return submit(rTask, callbacks, priority, false);
+    }
+
+    /*
+     * When admitted, rTask takes over the outstanding slot reserved
+     * for it by AdmissionControl.admit.
+     */
+    private RTaskToken submit(RTask rTask, ScoreCallback[] callbacks,
+                              boolean priority, boolean admitted) {
+
+        if(rTask == null) {
+            if(admitted) {
+                admissionControl.release();
+            }
+            return null;
+        }
+
+        if(callbacks != null) {
+            pendingCallbacks.put(rTask, callbacks);
+        }
+
+        if(circuitBreaker != null && rBroker != null &&
+           !rBroker.isConnected()) {
+            circuitBreaker.open("RBroker runtime disconnected.");
+        }
+
+        if(rBroker == null ||
+           (circuitBreaker != null && !circuitBreaker.allow())) {
+            /*
+             * RTask was never submitted, release any callbacks and
+             * cache waiters without pushing FraudScores to clients.
+             */
+            if(admitted) {
+                admissionControl.release();
+            }
+            completeFraudScores(buildFraudScores(rTask, null),
+                                pendingCallbacks.remove(rTask), null, false);
+            return null;
+        }
+
+        if(!admitted) {
+            admissionControl.submitted();
+        }
+        if(!priorityLanes.submit(rTask, priority, maxConcurrency())) {
+            return null;
+        }
+
+        RTaskToken rTaskToken = submitToBroker(rTask, priority);
+        if(rTaskToken == null) {
+            submitDeferred();
+        }
+        return rTaskToken;
+    }
+
+    /*
+     * RBroker RTaskListener Implementation.
      */
-    public void buildPool(int poolSize) {
 
-        try {
+    public void onTaskCompleted(RTask rTask, RTaskResult rTaskResult) {
+
+        if(taskBrokers.remove(rTask) == null) {
+            return;
+        }
+
+        if(taskHedger != null) {
+            /*
+             * Continue as the original RTask of a hedged pair, once the
+             * pair completes.
+             */
+            rTask = taskHedger.completed(rTask,
+                        rTaskResult != null && rTaskResult.isSuccess());
+            if(rTask == null) {
+                return;
+            }
+        }
+
+        admissionControl.completed();
+        priorityLanes.completed(rTask,
+                        rTaskResult != null && rTaskResult.isSuccess());
+        recordOutcome(rTask, rTaskResult != null && rTaskResult.isSuccess());
+        submitDeferred();
+
+        if(rTaskResult != null && rTaskResult.isSuccess()) {
+            codeExecution.record(rTaskResult.getTimeOnCode());
+            serverOverhead.record(rTaskResult.getTimeOnServer() -
+                                  rTaskResult.getTimeOnCode());
+            networkLatency.record(rTaskResult.getTimeOnCall() -
+                                  rTaskResult.getTimeOnServer());
+        }
+
+        List<FraudScore> fraudScores = buildFraudScores(rTask, rTaskResult);
+
+        if(taskAudit != null) {
+            taskAudit.record(fraudScores, rTaskResult, null);
+        }
+        if(taskAudit == null || rTaskResult == null || !rTaskResult.isSuccess()) {
+            RBrokerStatsHelper.printRTaskResult(rTask, rTaskResult, null);
+        }
+        recordTaskEvent(rTask, fraudScores, rTaskResult, null);
+
+        ScoreCallback[] callbacks = pendingCallbacks.remove(rTask);
+        if(treeScorer != null) {
+            verifyFraudScores(fraudScores);
+            /*
+             * Verification RTasks carry no callbacks, RTasks that do,
+             * such as warm-up RTasks, are still completed.
+             */
+            if(callbacks == null) {
+                return;
+            }
+        }
+
+        completeFraudScores(fraudScores, callbacks, rTaskResult, true);
+    }
+
+    public void onTaskError(RTask rTask, Throwable throwable) {
+
+        if(taskBrokers.remove(rTask) == null) {
+            return;
+        }
+
+        if(taskHedger != null) {
+            rTask = taskHedger.completed(rTask, false);
+            if(rTask == null) {
+                return;
+            }
+        }
+
+        admissionControl.completed();
+        priorityLanes.completed(rTask, false);
+        recordOutcome(rTask, false);
+        submitDeferred();
+        RBrokerStatsHelper.printRTaskResult(rTask, null, throwable);
+
+        List<FraudScore> fraudScores = buildFraudScores(rTask, null);
+        if(taskAudit != null) {
+            taskAudit.record(fraudScores, null, throwable);
+        }
+        recordTaskEvent(rTask, fraudScores, null, throwable);
+
+        ScoreCallback[] callbacks = pendingCallbacks.remove(rTask);
+        if(treeScorer == null || callbacks != null) {
+            completeFraudScores(fraudScores, callbacks, null, true);
+        }
+
+        if(circuitBreaker != null && rBroker != null &&
+           !rBroker.isConnected()) {
+            /*
+             * The CircuitBreaker alerts clients and rebuilds the pool.
+             */
+            circuitBreaker.open("RBroker runtime disconnected.");
+        } else
+        if(rBroker != null & !rBroker.isConnected()) {
+            /*
+             * If RTask is failing because the RBroker runtime has
+             * lost it's connection to the DeployR server then broadcast
+             * an alert message indicating problem and potential remedy.
+             */
+            String msg = "The RBroker runtime has lost it's connection " +
+                "to DeployR server. Try building a new pool using Resize.";
+            String cause = throwable.getMessage();
+            alertClient(msg, cause, true);
+        }
+    }
+
+    /*
+     * RBroker RBrokerListener Implementation.
+     */
+
+    public void onRuntimeError(Throwable throwable) {
+        /*
+         * In case of an unexpected runtime error from the RBroker
+         * runtime broadcast an alert message.
+         */
+        String cause = throwable.getMessage();
+        String msg = "RBrokerListener Event: " + cause;
+        alertClient(msg, cause, true);
+
+        /*
+         * Only a runtime error that leaves the current RBroker
+         * disconnected takes the service out of traffic.
+         */
+        RBroker broker = rBroker;
+        if(circuitBreaker != null && broker != null &&
+           !broker.isConnected()) {
+            circuitBreaker.open("RBroker runtime error, " + cause + ".");
+        }
+    }
+
+    public void onRuntimeStats(RBrokerRuntimeStats stats, int maxConcurrency) {
+        RBrokerStatsHelper.printRBrokerStats(stats, maxConcurrency);
+
+        if(poolAutoscaler != null) {
+            poolAutoscaler.observe(stats.totalTimeTasksOnCall);
+        }
+
+        RuntimeStats runtimeStats = new RuntimeStats();
+        runtimeStats = populateRuntimeStats(runtimeStats, stats);
+
+        RBrokerStatsHelper.printLatencyPercentiles("Code Execution",
+                                runtimeStats.codeExecutionPercentiles);
+        RBrokerStatsHelper.printLatencyPercentiles("Server Overhead",
+                                runtimeStats.serverOverheadPercentiles);
+        RBrokerStatsHelper.printLatencyPercentiles("Network Latency",
+                                runtimeStats.networkLatencyPercentiles);
+        /*
+         * Push RuntimeStats message over STOMP Web Socket to clients
+         * listening on FRAUDMSGTOPIC.
+         */
+        scorePublisher.publish(runtimeStats);
+    }
+
+    /*
+     * Builds a FraudScore object that encapsulates an RTask result
+     * that is then pushed as a STOMP message to clients that have
+     * subscribed on FRAUDMSGTOPIC. Package-private for
+     * FraudServiceBenchmark.
+     */
+    FraudScore buildFraudScore(RTask rTask, RTaskResult rTaskResult) {
+
+        FraudScore fraudScore = new FraudScore();
+
+        try {
+
+            List<RData> rinputs =
+                ((PooledTaskOptions)((PooledTask)rTask).options).rinputs;
+
+            fraudScore.balance =
+                (int) ((RNumeric)rinputs.get(0)).getValue();
+            fraudScore.transactions =
+                (int) ((RNumeric)rinputs.get(1)).getValue();
+            fraudScore.credit =
+                (int) ((RNumeric)rinputs.get(2)).getValue();
+
+            if(rTaskResult != null && rTaskResult.isSuccess()) {
+
+                fraudScore.success = true;
+
+                List<RData> rObjects = rTaskResult.getGeneratedObjects();
+                fraudScore.score = ((RNumeric)rObjects.get(0)).getValue();
+            }
+
+        } catch(Exception ex) {
+            log.warn("buildFraudScore: ex=" + ex);
+        }
+
+        return fraudScore;
+    }
+
+    /*
+     * Fans the result of an RTask out into one FraudScore per scored
+     * account. An RTask built by buildTask scores a single account, an
+     * RTask built by buildBatchTask scores one account per element
+     * of its numeric vector inputs.
+     */
+    private List<FraudScore> buildFraudScores(RTask rTask,
+                                              RTaskResult rTaskResult) {
+
+        List<RData> rinputs = null;
+
+        try {
+            rinputs = ((PooledTaskOptions)((PooledTask)rTask).options).rinputs;
+        } catch(Exception ex) {
+            log.warn("buildFraudScores: ex=" + ex);
+        }
+
+        if(rinputs == null || !(rinputs.get(0) instanceof RNumericVector)) {
+            return Collections.singletonList(buildFraudScore(rTask, rTaskResult));
+        }
+
+        List<Double> balance = ((RNumericVector) rinputs.get(0)).getValue();
+        List<Double> transactions = ((RNumericVector) rinputs.get(1)).getValue();
+        List<Double> credit = ((RNumericVector) rinputs.get(2)).getValue();
+        List<Double> scores = null;
+
+        try {
+
+            if(rTaskResult != null && rTaskResult.isSuccess()) {
+                /*
+                 * R returns a length-one score vector as a scalar.
+                 */
+                RData x = rTaskResult.getGeneratedObjects().get(0);
+                if(x instanceof RNumericVector) {
+                    scores = ((RNumericVector) x).getValue();
+                } else {
+                    scores = Collections.singletonList(((RNumeric) x).getValue());
+                }
+            }
+
+        } catch(Exception ex) {
+            log.warn("buildFraudScores: ex=" + ex);
+        }
+
+        List<FraudScore> fraudScores =
+                            new ArrayList<FraudScore>(balance.size());
 
-            String msg = "RBroker pool initializing on " +
-                         System.getProperty("endpoint") +
-                         ". Requested " + poolSize +
-                         " R session(s) in the pool. " +
-                         "This may take some time. Please wait.";
-            alertClient(msg, null, false);
+        for(int i=0; i<balance.size(); i++) {
 
-            if(rBroker == null) {
+            FraudScore fraudScore = new FraudScore();
 
-                /*
-                 * Create initial RBroker instance.
-                 */
+            fraudScore.balance = balance.get(i).intValue();
+            fraudScore.transactions = transactions.get(i).intValue();
+            fraudScore.credit = credit.get(i).intValue();
 
-                RAuthentication rAuth =
-                    new RBasicAuthentication(System.getProperty("username"),
-                                             System.getProperty("password"));
+            if(scores != null && i < scores.size()) {
+                fraudScore.success = true;
+                fraudScore.score = scores.get(i);
+            }
 
-                PoolCreationOptions poolOptions = new PoolCreationOptions();
+            fraudScores.add(fraudScore);
+        }
 
-                PoolPreloadOptions preloadOptions = 
-                                        new PoolPreloadOptions();
-                preloadOptions.filename = System.getProperty("repository-model");
-                preloadOptions.directory = System.getProperty("repository-directory");
-                preloadOptions.author = System.getProperty("username");
-                poolOptions.preloadWorkspace = preloadOptions;
-                String endpoint = System.getProperty("endpoint");
-                boolean allowSelfSigned = 
-                    Boolean.valueOf(System.getProperty("allow.SelfSignedSSLCert"));
+        return fraudScores;
+    }
 
-                /*
-                 * Ensure releaseGridResources property is enabled
-                 * so server-side grid resource management will auto
-                 * clear prior pool resources before creating a new
-                 * pool on a refresh.
-                 */
-                poolOptions.releaseGridResources = true;
+    /*
+     * Completes each FraudScore computed by an RTask. Pushes each as a
+     * STOMP message to clients that have subscribed on FRAUDMSGTOPIC,
+     * once for the account that was scored and once for every request
+     * coalesced onto that account by the ScoreCache while its RTask was
+     * in-flight, then passes it to any waiting ScoreCallback.
+     */
+    private void completeFraudScores(List<FraudScore> fraudScores,
+                                     ScoreCallback[] callbacks,
+                                     RTaskResult rTaskResult,
+                                     boolean publish) {
+
+        for(int i=0; i<fraudScores.size(); i++) {
+
+            FraudScore fraudScore = fraudScores.get(i);
+            List<ScoreCallback> waiters = Collections.emptyList();
+
+            if(scoreCache != null) {
+                waiters = scoreCache.complete(
+                                ScoreCache.key(fraudScore.balance,
+                                               fraudScore.transactions,
+                                               fraudScore.credit),
+                                fraudScore.score, fraudScore.success);
+            }
 
-                brokerConfig = new PooledBrokerConfig(endpoint,
-                                                      rAuth,
-                                                      poolSize,
-                                                      poolOptions);
-                brokerConfig.allowSelfSignedSSLCert = allowSelfSigned;
+            if(publish) {
+                for(int j=0; j<=waiters.size(); j++) {
+                    // Push FraudScore message over STOMP Web Socket to clients.
+                    scorePublisher.publish(fraudScore);
+                }
+            }
 
-                rBroker = RBrokerFactory.pooledTaskBroker(brokerConfig);
-                lastAllocatedPoolSize = rBroker.maxConcurrency();
+            if(callbacks != null && i < callbacks.length) {
+                notifyCallback(callbacks[i], fraudScore, rTaskResult);
+            }
+            for(ScoreCallback waiter : waiters) {
+                notifyCallback(waiter, fraudScore, rTaskResult);
+            }
+        }
+    }
 
-                rBroker.addTaskListener(this);
-                rBroker.addBrokerListener(this);
+    /*
+     * Completes an account that could not be scored as failed.
+     */
+    private void failScore(int bal, int trans, int credit,
+                           ScoreCallback callback) {
 
-                log.info("RBroker pool initialized with " +
-                    lastAllocatedPoolSize + " R sessions.");
+        FraudScore fraudScore = new FraudScore();
+        fraudScore.balance = bal;
+        fraudScore.transactions = trans;
+        fraudScore.credit = credit;
+        completeFraudScores(Collections.singletonList(fraudScore),
+                            (callback != null) ?
+                                new ScoreCallback[] { callback } : null,
+                            null, false);
+    }
 
-            } else {
+    /*
+     * Completes an account scored without an RTask.
+     */
+    private void completeScore(int bal, int trans, int credit,
+                               double score, ScoreCallback callback) {
 
-                /*
-                 * Release old instance of RBroker.
-                 */
-                rBroker.shutdown();
+        FraudScore fraudScore = new FraudScore();
+        fraudScore.balance = bal;
+        fraudScore.transactions = trans;
+        fraudScore.credit = credit;
+        fraudScore.score = score;
+        fraudScore.success = true;
+        // Push FraudScore message over STOMP Web Socket to clients.
+        scorePublisher.publish(fraudScore);
 
-                /*
-                 * Create new instance of RBroker.
-                 */
-                brokerConfig.maxConcurrentTaskLimit = poolSize;
-                rBroker = RBrokerFactory.pooledTaskBroker(brokerConfig);
-                lastAllocatedPoolSize = rBroker.maxConcurrency();
+        notifyCallback(callback, fraudScore, null);
+    }
 
-                log.info("RBroker pool resized to " +
-                    lastAllocatedPoolSize + " R sessions.");
+    private void notifyCallback(ScoreCallback callback,
+                                FraudScore fraudScore,
+                                RTaskResult rTaskResult) {
+
+        if(callback != null) {
+            try {
+                callback.onScore(fraudScore, rTaskResult);
+            } catch(Exception ex) {
+                log.warn("FraudService: score callback ex=" + ex);
+            }
+        }
+    }
+
+    /*
+     * Compares RBroker scores from verification RTasks with the
+     * native TreeScorer score for the same account.
+     */
+    private void verifyFraudScores(List<FraudScore> fraudScores) {
 
-                rBroker.addTaskListener(this);
-                rBroker.addBrokerListener(this);
+        for(FraudScore fraudScore : fraudScores) {
 
+            if(!fraudScore.success) {
+                continue;
             }
 
-            RuntimeStats runtimeStats = new RuntimeStats();
-            runtimeStats = populateRuntimeStats(runtimeStats, null);
-            /*
-             * Push RuntimeStats message over STOMP Web Socket to clients
-             * listening on FRAUDMSGTOPIC.
-             */
-            simpMessagingTemplate.convertAndSend(FRAUDMSGTOPIC, runtimeStats);
+            double nativeScore = treeScorer.score(fraudScore.balance,
+                                                  fraudScore.transactions,
+                                                  fraudScore.credit);
+            verifiedScores.incrementAndGet();
 
-        } catch(Exception ex) {
-            log.warn("FraudService: init ex=" + ex);
-            String msg = "RBroker pool initialization failed. Is " +
-                System.getProperty("endpoint") +
-                " a valid DeployR server endpoint?" +
-                " Using valid user credentials?";
-            alertClient(msg, ex.getMessage(), true);
+            if(Math.abs(nativeScore - fraudScore.score) > verifyTolerance) {
+                mismatchedScores.incrementAndGet();
+                log.warn("Native score mismatch: " + fraudScore +
+                         ", native score=" + nativeScore);
+            }
         }
     }
 
     /*
-     * Service Methods:
-     *
-     * buildTask()
-     * submitTask(RTask rTask)
-     *
-     * Supports: FraudController GET:/fraud/score/{tasks}.
+     * Private helper methods.
      */
-    public RTask buildTask() {
 
-        RTask rTask = null;
+    /*
+     * Submits an RTask admitted by PriorityLanes to the current RBroker,
+     * with RBroker priority for the priority lane. An RTask the RBroker
+     * refuses is completed without pushing FraudScores to clients.
+     */
+    private RTaskToken submitToBroker(RTask rTask, boolean priority) {
 
-        try {
+        RBroker broker = rBroker;
+        taskBrokers.put(rTask, broker);
+        if(taskEvents.isEnabled()) {
+            submitTimes.put(rTask, System.nanoTime());
+        }
 
-            PooledTaskOptions taskOptions = new PooledTaskOptions();
-            taskOptions.routputs = Arrays.asList("x");
+        boolean hedged = taskHedger != null && !probeTasks.contains(rTask);
+        if(hedged) {
+            taskHedger.track(rTask, priority);
+        }
 
-            int bal = Math.abs((new Random()).nextInt() % 25000);
-            int trans = Math.abs((new Random()).nextInt() % 100);
-            int credit = Math.abs((new Random()).nextInt() % 75);
+        try {
+            RTaskToken rTaskToken = broker.submit(rTask, priority);
+            taskEvents.taskSubmitted(admissionControl.getOutstanding());
+            return rTaskToken;
+        } catch(Exception ex) {
+            log.warn("FraudService: submitted RTask ex=" + ex);
+        }
 
-            taskOptions.rinputs = Arrays.asList(
-                (RData) RDataFactory.createNumeric("bal", bal),
-                (RData) RDataFactory.createNumeric("trans", trans),
-                (RData) RDataFactory.createNumeric("credit", credit)
-            );
+        if(hedged) {
+            taskHedger.forget(rTask);
+        }
+        taskBrokers.remove(rTask);
+        submitTimes.remove(rTask);
+        admissionControl.completed();
+        priorityLanes.completed(rTask, false);
+        recordOutcome(rTask, false);
+        completeFraudScores(buildFraudScores(rTask, null),
+                            pendingCallbacks.remove(rTask), null, false);
+        return null;
+    }
 
-            rTask = RTaskFactory.pooledTask(System.getProperty("repository-script"),
-                                            System.getProperty("repository-directory"),
-                                            System.getProperty("username"),
-                                            null, taskOptions);
+    /*
+     * TaskHedger duplicate of rTask, sharing its inputs.
+     */
+    private RTask duplicateTask(RTask rTask) {
 
+        try {
+            PooledTask pooledTask = (PooledTask) rTask;
+            return (pooledTask.code != null) ?
+                RTaskFactory.pooledTask(pooledTask.code, pooledTask.options) :
+                RTaskFactory.pooledTask(pooledTask.filename,
+                                        pooledTask.directory,
+                                        pooledTask.author,
+                                        pooledTask.version,
+                                        pooledTask.options);
         } catch(Exception ex) {
-            log.warn("FraudController: buildTask, " +
-                                                    "ex=" + ex);
+            log.warn("FraudService: duplicateTask ex=" + ex);
+            return null;
         }
-
-        return rTask;
     }
 
+    /*
+     * Submits a TaskHedger hedge straight to the current RBroker, outside
+     * admission control and PriorityLanes, as the hedge budget already
+     * bounds the extra load.
+     */
+    private RTaskToken submitHedge(RTask hedge, boolean priority) {
 
-    public void submit(RTask rTask) {
-
-        if(rBroker != null && rTask != null) {
+        RBroker broker = rBroker;
+        if(broker == null || isCircuitOpen()) {
+            return null;
+        }
 
-            try {
-                RTaskToken taskToken = rBroker.submit(rTask);
-            } catch(Exception ex) {
-                log.warn("FraudService: submitted RTask ex=" + ex);
-            }
+        taskBrokers.put(hedge, broker);
+        try {
+            return broker.submit(hedge, priority);
+        } catch(Exception ex) {
+            log.warn("FraudService: submitted hedge RTask ex=" + ex);
         }
+
+        taskBrokers.remove(hedge);
+        return null;
     }
 
     /*
-     * RBroker RTaskListener Implementation.
+     * Reports the outcome of rTask to the CircuitBreaker, as a trial
+     * RTask outcome for half-open probes.
      */
+    private void recordOutcome(RTask rTask, boolean success) {
 
-    public void onTaskCompleted(RTask rTask, RTaskResult rTaskResult) {
-
-        RBrokerStatsHelper.printRTaskResult(rTask, rTaskResult, null);
+        if(circuitBreaker == null) {
+            return;
+        }
 
-        FraudScore fraudScore = buildFraudScore(rTask, rTaskResult);
-        // Push FraudScore message over STOMP Web Socket to clients.
-        simpMessagingTemplate.convertAndSend(FRAUDMSGTOPIC, fraudScore);
+        if(probeTasks.remove(rTask)) {
+            circuitBreaker.probeCompleted(success);
+        } else {
+            circuitBreaker.record(success);
+        }
     }
 
-    public void onTaskError(RTask rTask, Throwable throwable) {
-        RBrokerStatsHelper.printRTaskResult(rTask, null, throwable);
-        // Push FraudScore message over STOMP Web Socket to clients.
-        FraudScore fraudScore = buildFraudScore(rTask, null);
-        simpMessagingTemplate.convertAndSend(FRAUDMSGTOPIC, fraudScore);
+    /*
+     * CircuitBreaker recovery, rebuilds the pool at its requested size.
+     */
+    private boolean reconnectPool() {
 
-        if(rBroker != null & !rBroker.isConnected()) {
-            /*
-             * If RTask is failing because the RBroker runtime has
-             * lost it's connection to the DeployR server then broadcast
-             * an alert message indicating problem and potential remedy.
-             */
-            String msg = "The RBroker runtime has lost it's connection " +
-                "to DeployR server. Try building a new pool using Resize.";
-            String cause = throwable.getMessage();
-            alertClient(msg, cause, true);
+        PooledBrokerConfig config = brokerConfig;
+        if(config == null) {
+            return false;
+        }
+
+        if(!buildPool(config.maxConcurrentTaskLimit, true)) {
+            return false;
         }
+
+        RBroker broker = rBroker;
+        return broker != null && broker.isConnected();
     }
 
     /*
-     * RBroker RBrokerListener Implementation.
+     * CircuitBreaker half-open trial RTasks, built from the workload and
+     * submitted on the priority lane past the open CircuitBreaker.
      */
+    private void submitProbes(int probes) {
 
-    public void onRuntimeError(Throwable throwable) {
-        /*
-         * In case of an unexpected runtime error from the RBroker
-         * runtime broadcast an alert message.
-         */
-        String cause = throwable.getMessage();
-        String msg = "RBrokerListener Event: " + cause;
-        alertClient(msg, cause, true);
-    }
+        for(int i=0; i<probes; i++) {
 
-    public void onRuntimeStats(RBrokerRuntimeStats stats, int maxConcurrency) {
-        RBrokerStatsHelper.printRBrokerStats(stats, maxConcurrency);
+            RTask rTask = buildTask();
+            if(rTask == null || rBroker == null) {
+                circuitBreaker.probeCompleted(false);
+                continue;
+            }
 
-        RuntimeStats runtimeStats = new RuntimeStats();
-        runtimeStats = populateRuntimeStats(runtimeStats, stats);
-        /*
-         * Push RuntimeStats message over STOMP Web Socket to clients
-         * listening on FRAUDMSGTOPIC.
-         */
-        simpMessagingTemplate.convertAndSend(FRAUDMSGTOPIC, runtimeStats);
+            probeTasks.add(rTask);
+            admissionControl.submitted();
+            if(priorityLanes.submit(rTask, true, maxConcurrency())) {
+                submitToBroker(rTask, true);
+            }
+        }
+    }
+
+    private void alertCircuitState(CircuitBreaker.State state,
+                                   String reason) {
+
+        switch(state) {
+            case OPEN:
+                alertClient("The RBroker runtime is unavailable, new " +
+                    "scoring requests are refused while the pool is " +
+                    "rebuilt automatically.", reason, true);
+                break;
+            case HALF_OPEN:
+                alertClient("RBroker pool rebuilt, running trial RTasks " +
+                    "before accepting new scoring requests.", reason, false);
+                break;
+            default:
+                alertClient("RBroker runtime recovered, scoring requests " +
+                    "are accepted again.", reason, false);
+        }
     }
 
     /*
-     * Builds a FraudScore object that encapsulates an RTask result
-     * that is then pushed as a STOMP message to clients that have
-     * subscribed on FRAUDMSGTOPIC. 
+     * Submits deferred bulk RTasks while bulk concurrency is free.
      */
-    private FraudScore buildFraudScore(RTask rTask, RTaskResult rTaskResult) {
+    private void submitDeferred() {
 
-        FraudScore fraudScore = new FraudScore();
+        RTask rTask;
+        while((rTask = priorityLanes.nextDeferred(maxConcurrency())) != null) {
+            submitToBroker(rTask, false);
+        }
+    }
 
-        try {
+    /*
+     * Emits the TaskEvents completed or failed event for rTask. The
+     * local queue wait is the time from submit to completion not
+     * accounted for by the RBroker call itself.
+     */
+    private void recordTaskEvent(RTask rTask,
+                                 List<FraudScore> fraudScores,
+                                 RTaskResult rTaskResult,
+                                 Throwable throwable) {
 
-            if(rTaskResult.isSuccess()) {
+        Long submitTime = submitTimes.remove(rTask);
+        FraudScore first = fraudScores.get(0);
 
-                fraudScore.success = true;
+        if(rTaskResult != null && rTaskResult.isSuccess()) {
 
-                List<RData> rinputs =
-                    ((PooledTaskOptions)((PooledTask)rTask).options).rinputs;
+            long queueWait = 0L;
+            if(submitTime != null) {
+                queueWait = Math.max(0L,
+                    (System.nanoTime() - submitTime) / 1000000L -
+                                            rTaskResult.getTimeOnCall());
+            }
 
-                fraudScore.balance =
-                    (int) ((RNumeric)rinputs.get(0)).getValue();
-                fraudScore.transactions =
-                    (int) ((RNumeric)rinputs.get(1)).getValue();
-                fraudScore.credit =
-                    (int) ((RNumeric)rinputs.get(2)).getValue();
+            taskEvents.taskCompleted(fraudScores.size(), first.balance,
+                                     first.transactions, first.credit,
+                                     rTaskResult.getTimeOnCode(),
+                                     rTaskResult.getTimeOnServer(),
+                                     rTaskResult.getTimeOnCall(),
+                                     queueWait);
+        } else {
 
-                if(rTaskResult != null) {
-                    List<RData> rObjects = rTaskResult.getGeneratedObjects();
-                    fraudScore.score = ((RNumeric)rObjects.get(0)).getValue();
-                }
-            }
+            String cause = (rTaskResult != null) ?
+                rTaskResult.getFailure() : String.valueOf(throwable);
 
-        } catch(Exception ex) {
-            log.warn("buildFraudScore: ex=" + ex);
+            taskEvents.taskFailed(fraudScores.size(), first.balance,
+                                  first.transactions, first.credit, cause);
         }
-
-        return fraudScore;
     }
 
     /*
-     * Private helper methods.
+     * Sets the pool configuration without building a pool, and records
+     * RTask timings as onTaskCompleted does, so a service can be
+     * benchmarked as if under load without a DeployR server.
+     * Package-private for FraudServiceBenchmark.
      */
+    void setBrokerConfig(PooledBrokerConfig brokerConfig) {
+        this.brokerConfig = brokerConfig;
+    }
+
+    void recordTimings(long timeOnCode, long serverOverhead,
+                       long networkLatency) {
+        codeExecution.record(timeOnCode);
+        this.serverOverhead.record(serverOverhead);
+        this.networkLatency.record(networkLatency);
+    }
 
-    private RuntimeStats populateRuntimeStats(RuntimeStats runtimeStats,
-                                           RBrokerRuntimeStats stats) {
+    /*
+     * Package-private for FraudServiceBenchmark.
+     */
+    RuntimeStats populateRuntimeStats(RuntimeStats runtimeStats,
+                                      RBrokerRuntimeStats stats) {
 
         runtimeStats.requestedPoolSize = brokerConfig.maxConcurrentTaskLimit;
         runtimeStats.allocatedPoolSize = lastAllocatedPoolSize;
-        runtimeStats.maxConcurrency = rBroker.maxConcurrency();
+        runtimeStats.maxConcurrency = maxConcurrency();
+
+        RBroker broker = rBroker;
+        if(broker instanceof ShardedRBroker) {
+            ShardedRBroker shardedBroker = (ShardedRBroker) broker;
+            runtimeStats.requestedPoolSize *= shardedBroker.getShardCount();
+            runtimeStats.shards = shardedBroker.getShardStats();
+        }
 
         runtimeStats.endpoint = brokerConfig.deployrEndpoint;
         if(brokerConfig.userCredentials != null) {
@@ -357,9 +1720,167 @@ public class FraudService
             }
         }
 
+        runtimeStats.codeExecutionPercentiles =
+                                    buildLatencyPercentiles(codeExecution);
+        runtimeStats.serverOverheadPercentiles =
+                                    buildLatencyPercentiles(serverOverhead);
+        runtimeStats.networkLatencyPercentiles =
+                                    buildLatencyPercentiles(networkLatency);
+
+        runtimeStats.outstandingTasks = admissionControl.getOutstanding();
+        runtimeStats.rejectedTasks = admissionControl.getRejected();
+
+        if(circuitBreaker != null) {
+            runtimeStats.circuitState = circuitBreaker.getState().name();
+            runtimeStats.circuitRefused = circuitBreaker.getRefused();
+        }
+
+        if(completionDispatcher != null) {
+            runtimeStats.dispatchQueueDepth = completionDispatcher.getDepth();
+            runtimeStats.dispatchHandoffPercentiles = buildLatencyPercentiles(
+                            completionDispatcher.getHandoffLatency());
+        }
+
+        if(taskHedger != null) {
+            runtimeStats.hedging = buildHedgeStats();
+        }
+
+        runtimeStats.priorityLane =
+                    buildLaneStats(priorityLanes.getPriorityLane());
+        runtimeStats.bulkLane = buildLaneStats(priorityLanes.getBulkLane());
+        runtimeStats.bulkLane.deferredTasks = priorityLanes.getDeferred();
+
+        if(treeScorer != null) {
+            runtimeStats.nativeScores = nativeScores.get();
+            runtimeStats.verifiedScores = verifiedScores.get();
+            runtimeStats.mismatchedScores = mismatchedScores.get();
+        }
+
+        if(scoreCache != null) {
+            runtimeStats.cacheHits = scoreCache.getHits();
+            runtimeStats.cacheCoalesced = scoreCache.getCoalesced();
+            runtimeStats.cacheMisses = scoreCache.getMisses();
+        }
+
         return runtimeStats;
     }
 
+    /*
+     * Service Method:
+     *
+     * getLatencyPercentiles()
+     *
+     * Supports: FraudController GET:/fraud/stats/latency.
+     */
+    public Map<String, LatencyPercentiles> getLatencyPercentiles() {
+
+        Map<String, LatencyPercentiles> latency =
+                            new LinkedHashMap<String, LatencyPercentiles>();
+        latency.put("codeExecution", buildLatencyPercentiles(codeExecution));
+        latency.put("serverOverhead", buildLatencyPercentiles(serverOverhead));
+        latency.put("networkLatency", buildLatencyPercentiles(networkLatency));
+        latency.put("priorityLane", buildLatencyPercentiles(
+                            priorityLanes.getPriorityLane().getLatency()));
+        latency.put("bulkLane", buildLatencyPercentiles(
+                            priorityLanes.getBulkLane().getLatency()));
+        return latency;
+    }
+
+    private LaneStats buildLaneStats(PriorityLanes.Lane lane) {
+
+        LaneStats laneStats = new LaneStats();
+        laneStats.submittedTasks = lane.getSubmitted();
+        laneStats.successfulTasks = lane.getSucceeded();
+        laneStats.failedTasks = lane.getFailed();
+        laneStats.outstandingTasks = priorityLanes.getOutstanding(lane);
+        laneStats.latencyPercentiles =
+                            buildLatencyPercentiles(lane.getLatency());
+        return laneStats;
+    }
+
+    private HedgeStats buildHedgeStats() {
+
+        HedgeStats hedgeStats = new HedgeStats();
+        hedgeStats.threshold = taskHedger.getThreshold();
+        hedgeStats.hedgedTasks = taskHedger.getHedged();
+        hedgeStats.hedgeWins = taskHedger.getHedgeWins();
+        hedgeStats.overBudgetTasks = taskHedger.getOverBudget();
+        hedgeStats.extraLoad = (taskHedger.getSubmitted() > 0) ?
+            100.0 * taskHedger.getHedged() / taskHedger.getSubmitted() : 0.0;
+        hedgeStats.unhedgedPercentiles =
+                    buildLatencyPercentiles(taskHedger.getCallTimes());
+        hedgeStats.hedgedPercentiles =
+                    buildLatencyPercentiles(taskHedger.getResultTimes());
+        return hedgeStats;
+    }
+
+    private LatencyPercentiles buildLatencyPercentiles(
+                                        LatencyHistogram histogram) {
+
+        long[] values =
+            histogram.percentiles(new double[] { 50, 90, 99, 99.9 });
+
+        LatencyPercentiles percentiles = new LatencyPercentiles();
+        percentiles.p50 = values[0];
+        percentiles.p90 = values[1];
+        percentiles.p99 = values[2];
+        percentiles.p999 = values[3];
+        return percentiles;
+    }
+
+    /*
+     * Service Method:
+     *
+     * getReadiness()
+     *
+     * The server is ready once startup warm-up completes, or once a
+     * pool is built when warm-up is disabled, and not ready again
+     * while the CircuitBreaker is refusing new work.
+     *
+     * Supports: FraudController GET:/fraud/ready.
+     */
+    public Readiness getReadiness() {
+
+        Readiness readiness = new Readiness();
+        long ready = readyTime;
+
+        if(ready > 0) {
+            readiness.state = PoolWarmup.State.READY.name();
+            readiness.timeToReady = ready -
+                ManagementFactory.getRuntimeMXBean().getStartTime();
+        } else {
+            readiness.state = (poolWarmup != null) ?
+                poolWarmup.getState().name() :
+                PoolWarmup.State.STARTING.name();
+        }
+        readiness.ready = (ready > 0) && !isCircuitOpen();
+
+        if(poolWarmup != null) {
+            readiness.warmupTime = poolWarmup.getWarmupTime();
+            readiness.warmupTasks = poolWarmup.getWarmupTasks();
+            readiness.failedWarmupTasks = poolWarmup.getFailedTasks();
+        }
+        PooledBrokerConfig config = brokerConfig;
+        if(config != null) {
+            readiness.requestedPoolSize = config.maxConcurrentTaskLimit;
+        }
+        readiness.allocatedPoolSize = maxConcurrency();
+        return readiness;
+    }
+
+    /*
+     * Returns true while the CircuitBreaker is refusing new work.
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker != null &&
+               circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+    }
+
+    public int maxConcurrency() {
+        RBroker broker = rBroker;
+        return (broker != null) ? broker.maxConcurrency() : 0;
+    }
+
     public void alertClient(String msg, String cause, boolean warning) {
 
         try {
@@ -369,12 +1890,57 @@ public class FraudService
             clientMsg.msg = msg;
             clientMsg.cause = cause;
             // Push ClientMessage over STOMP Web Socket to clients.
-            simpMessagingTemplate.convertAndSend(FRAUDMSGTOPIC, clientMsg);
+            scorePublisher.publish(clientMsg);
 
         } catch(Exception cex) {}
 
     }
 
+    /*
+     * Records the time the server first became ready.
+     */
+    private synchronized void markReady() {
+
+        if(readyTime == 0L) {
+            readyTime = System.currentTimeMillis();
+            log.info("Fraud Score server ready to score in " +
+                (readyTime - ManagementFactory.getRuntimeMXBean()
+                                            .getStartTime()) +
+                "ms from startup.");
+        }
+    }
+
+    /*
+     * Scores an account through the in-process Java path, building its
+     * RTask and FraudScores without submitting to the RBroker runtime.
+     */
+    private void warmScore(int bal, int trans, int credit) {
+
+        RTask rTask = buildTask(bal, trans, credit);
+        if(rTask != null) {
+            buildFraudScores(rTask, null);
+        }
+        if(treeScorer != null) {
+            treeScorer.score(bal, trans, credit);
+        }
+        if(scoreLattice != null &&
+           ScoreLattice.inDomain(bal, trans, credit)) {
+            scoreLattice.score(bal, trans, credit);
+        }
+    }
+
+    /*
+     * Spring Lifecycle Event Handler
+     *
+     * Service: init
+     */
+    @PostConstruct
+    public void init() {
+        if(poolWarmup != null) {
+            poolWarmup.start();
+        }
+    }
+
     /*
      * Spring Lifecycle Event Handler
      *
@@ -382,8 +1948,35 @@ public class FraudService
      */
     @PreDestroy
     public void destroy() throws Exception {
+        if(circuitBreaker != null) {
+            circuitBreaker.shutdown();
+        }
+        if(taskHedger != null) {
+            taskHedger.shutdown();
+        }
+        if(poolAutoscaler != null) {
+            poolAutoscaler.shutdown();
+        }
+        if(scoreBatcher != null) {
+            scoreBatcher.shutdown();
+        }
+        if(scoreLattice != null) {
+            scoreLattice.close();
+        }
+        scorePublisher.shutdown();
+        synchronized(drainingBrokers) {
+            for(RBroker broker : drainingBrokers) {
+                broker.shutdown();
+            }
+        }
         if(rBroker != null) {
             rBroker.shutdown();
         }
+        if(completionDispatcher != null) {
+            completionDispatcher.shutdown();
+        }
+        if(taskAudit != null) {
+            taskAudit.close();
+        }
     }
 }
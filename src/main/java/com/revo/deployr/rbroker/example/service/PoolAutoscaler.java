@@ -0,0 +1,258 @@
+/*
+ * PoolAutoscaler.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Control loop that resizes the RBroker pool to hold a target
+ * utilisation and, optionally, a target p99 latency.
+ *
+ * Once every interval the average number of busy R sessions is taken
+ * from the growth in RBroker runtime total time on call, and RTasks
+ * outstanding beyond pool concurrency are added as backlog. The pool
+ * grows when utilisation, busy plus backlog over concurrency, is above
+ * the target band, or the p99 latency is above its band, and shrinks
+ * when both are below their bands. The bands are the targets plus or
+ * minus the hysteresis fraction. Growth is sized to bring utilisation
+ * back to target, shrinking halves the gap at most. No resize follows
+ * another, by the autoscaler or not, within the up or down cooldown.
+ * Each resize builds the new pool alongside the current pool, so the
+ * grid must allow up to twice maxSize R sessions.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+public class PoolAutoscaler {
+
+    private static Logger log = Logger.getLogger(PoolAutoscaler.class);
+
+    /*
+     * The RBroker pool being scaled.
+     */
+    public interface Pool {
+
+        /*
+         * False while there is no pool to scale.
+         */
+        boolean isAvailable();
+
+        /*
+         * Requested pool size, as passed to resize.
+         */
+        int getPoolSize();
+
+        int maxConcurrency();
+
+        int getOutstanding();
+
+        /*
+         * Time the pool was last built, by any caller, or 0.
+         */
+        long lastResized();
+
+        /*
+         * Recent p99 RTask latency in milliseconds, or 0.
+         */
+        long getLatency();
+
+        /*
+         * Returns false if the pool could not be resized.
+         */
+        boolean resize(int poolSize);
+
+        void decided(String msg);
+    }
+
+    private final Pool pool;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetUtilisation;
+    private final long targetLatency;
+    private final double hysteresis;
+    private final long cooldownUp;
+    private final long cooldownDown;
+    private final ScheduledExecutorService timer;
+
+    /*
+     * Latest RBroker runtime total time on call, in milliseconds.
+     */
+    private volatile long totalTimeOnCall = -1L;
+
+    private long baselineTimeOnCall = -1L;
+    private long baselineTime = 0L;
+    private long lastResize = 0L;
+
+    public PoolAutoscaler(Pool pool,
+                          int minSize,
+                          int maxSize,
+                          double targetUtilisation,
+                          long targetLatency,
+                          double hysteresis,
+                          long cooldownUp,
+                          long cooldownDown,
+                          long interval) {
+
+        this.pool = pool;
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetUtilisation = targetUtilisation;
+        this.targetLatency = targetLatency;
+        this.hysteresis = hysteresis;
+        this.cooldownUp = cooldownUp;
+        this.cooldownDown = cooldownDown;
+
+        timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "pool-autoscaler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evaluate();
+                } catch(Exception ex) {
+                    log.warn("PoolAutoscaler: evaluate ex=" + ex);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Records the RBroker runtime total time on call, from
+     * RBrokerListener.onRuntimeStats.
+     */
+    public void observe(long totalTimeOnCall) {
+        this.totalTimeOnCall = totalTimeOnCall;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void evaluate() {
+
+        long now = System.currentTimeMillis();
+        long timeOnCall = totalTimeOnCall;
+
+        if(!pool.isAvailable() || timeOnCall < 0) {
+            return;
+        }
+
+        /*
+         * A new RBroker runtime restarts its totals, measure from the
+         * next interval.
+         */
+        if(baselineTimeOnCall < 0 || timeOnCall < baselineTimeOnCall ||
+           now <= baselineTime) {
+            baseline(now, timeOnCall);
+            return;
+        }
+
+        double busy = (double) (timeOnCall - baselineTimeOnCall) /
+                                                    (now - baselineTime);
+        baseline(now, timeOnCall);
+
+        int maxConcurrency = pool.maxConcurrency();
+        if(maxConcurrency <= 0) {
+            return;
+        }
+
+        int size = pool.getPoolSize();
+        int backlog = Math.max(0, pool.getOutstanding() - maxConcurrency);
+        double utilisation = (busy + backlog) / maxConcurrency;
+        long latency = pool.getLatency();
+
+        boolean latencyHigh = targetLatency > 0 &&
+                              latency > targetLatency * (1 + hysteresis);
+        boolean latencyLow = targetLatency <= 0 ||
+                             latency < targetLatency * (1 - hysteresis);
+
+        int desired = (int) Math.ceil(size * utilisation / targetUtilisation);
+        if(latencyHigh) {
+            desired = Math.max(desired, size + 1);
+        }
+        desired = Math.max(minSize, Math.min(maxSize, desired));
+
+        String reason = String.format("utilisation %.0f%% (target %.0f%%)",
+                            utilisation * 100, targetUtilisation * 100) +
+                        ((targetLatency > 0) ? ", p99 " + latency +
+                            "ms (target " + targetLatency + "ms)" : "") +
+                        ((backlog > 0) ? ", " + backlog + " RTask(s) queued" :
+                                         "");
+
+        /*
+         * Cooldowns also run from pool builds not made by the
+         * autoscaler.
+         */
+        long lastResize = Math.max(this.lastResize, pool.lastResized());
+
+        if(desired > size &&
+           (latencyHigh ||
+            utilisation > targetUtilisation * (1 + hysteresis))) {
+
+            if(now - lastResize >= cooldownUp) {
+                resize(size, desired, "growing", reason);
+            }
+
+        } else
+        if(desired < size && latencyLow &&
+           utilisation < targetUtilisation * (1 - hysteresis)) {
+
+            if(now - lastResize >= cooldownDown) {
+                /*
+                 * Shrink gradually, by at most half the gap.
+                 */
+                int target = size - Math.max(1, (size - desired) / 2);
+                resize(size, target, "shrinking", reason);
+            }
+        }
+    }
+
+    private void resize(int size, int target, String action,
+                        String reason) {
+
+        pool.decided("Autoscaler " + action + " RBroker pool from " + size +
+                     " to " + target + " R session(s), " + reason + ".");
+
+        if(!pool.resize(target)) {
+            pool.decided("Autoscaler failed to resize RBroker pool to " +
+                         target + " R session(s).");
+        }
+
+        /*
+         * Cooldowns run from the end of the resize.
+         */
+        lastResize = System.currentTimeMillis();
+
+        /*
+         * Exclude the time spent resizing from the next measure.
+         */
+        baselineTimeOnCall = -1L;
+    }
+
+    private void baseline(long now, long timeOnCall) {
+        baselineTime = now;
+        baselineTimeOnCall = timeOnCall;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * PoolWarmup.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Startup warm-up of the RBroker pool, so that the server only reports
+ * ready once it can score at full speed.
+ *
+ * On a background thread, the pool is built, which loads the model into
+ * every R session, then javaIterations accounts are scored through the
+ * in-process Java path to warm the JIT, then rounds RTasks per R session
+ * are submitted at once, so each R session of the idle pool runs warm-up
+ * RTasks. The warm-up is complete once every RTask has completed, or
+ * after timeout milliseconds. Failed warm-up RTasks are counted but do
+ * not hold the server back, a pool that could not be built does.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+
+import com.revo.deployr.client.broker.RTaskResult;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class PoolWarmup {
+
+    private static Logger log = Logger.getLogger(PoolWarmup.class);
+
+    public enum State { STARTING, WARMING, READY, FAILED }
+
+    public interface Target {
+
+        /*
+         * Returns false if the pool could not be built.
+         */
+        boolean buildPool(int poolSize);
+
+        int maxConcurrency();
+
+        /*
+         * Scores an account in-process, without an RTask.
+         */
+        void warmJava(int bal, int trans, int credit);
+
+        /*
+         * Submits an RTask scoring an account, its FraudScore passed to
+         * callback. Returns false if the RTask was not submitted.
+         */
+        boolean warmTask(int bal, int trans, int credit,
+                         ScoreCallback callback);
+
+        void warmed(State state);
+    }
+
+    private final Target target;
+    private final int poolSize;
+    private final int rounds;
+    private final int javaIterations;
+    private final long timeout;
+
+    /*
+     * Warm-up accounts, independent of the seeded demo workload.
+     */
+    private final WorkloadGenerator accounts =
+        new SyntheticWorkload(0L, new SyntheticWorkload.Uniform(25000),
+                              new SyntheticWorkload.Uniform(100),
+                              new SyntheticWorkload.Uniform(75),
+                              0, 0.0, 0.0, 1);
+
+    private volatile State state = State.STARTING;
+    private volatile long warmupTime = 0L;
+    private final AtomicLong warmupTasks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+
+    public PoolWarmup(Target target,
+                      int poolSize,
+                      int rounds,
+                      int javaIterations,
+                      long timeout) {
+
+        this.target = target;
+        this.poolSize = poolSize;
+        this.rounds = Math.max(1, rounds);
+        this.javaIterations = javaIterations;
+        this.timeout = timeout;
+    }
+
+    public void start() {
+
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    warm();
+                } catch(Exception ex) {
+                    log.warn("PoolWarmup: warm ex=" + ex);
+                    finish(State.FAILED, System.currentTimeMillis());
+                }
+            }
+        }, "pool-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getWarmupTime() {
+        return warmupTime;
+    }
+
+    public long getWarmupTasks() {
+        return warmupTasks.get();
+    }
+
+    public long getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void warm() throws InterruptedException {
+
+        long started = System.currentTimeMillis();
+        state = State.WARMING;
+        log.info("PoolWarmup: building pool of " + poolSize +
+                 " R session(s).");
+
+        if(!target.buildPool(poolSize)) {
+            log.warn("PoolWarmup: pool could not be built.");
+            finish(State.FAILED, started);
+            return;
+        }
+
+        int[] account = new int[3];
+        for(int i=0; i<javaIterations; i++) {
+            accounts.next(account);
+            target.warmJava(account[0], account[1], account[2]);
+        }
+
+        int tasks = target.maxConcurrency() * rounds;
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        log.info("PoolWarmup: submitting " + tasks + " warm-up RTask(s).");
+
+        for(int i=0; i<tasks; i++) {
+
+            final AtomicBoolean done = new AtomicBoolean();
+            ScoreCallback callback = new ScoreCallback() {
+                public void onScore(FraudScore fraudScore,
+                                    RTaskResult rTaskResult) {
+                    if(done.compareAndSet(false, true)) {
+                        if(!fraudScore.success) {
+                            failedTasks.incrementAndGet();
+                        }
+                        latch.countDown();
+                    }
+                }
+            };
+
+            accounts.next(account);
+            warmupTasks.incrementAndGet();
+            if(!target.warmTask(account[0], account[1], account[2],
+                                callback) &&
+               done.compareAndSet(false, true)) {
+                failedTasks.incrementAndGet();
+                latch.countDown();
+            }
+        }
+
+        if(!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+            log.warn("PoolWarmup: " + latch.getCount() + " warm-up " +
+                     "RTask(s) still outstanding after " + timeout + "ms.");
+        }
+
+        finish(State.READY, started);
+    }
+
+    private void finish(State finalState, long started) {
+
+        warmupTime = System.currentTimeMillis() - started;
+        state = finalState;
+        log.info("PoolWarmup: " + finalState + " after " + warmupTime +
+                 "ms, " + failedTasks.get() + " of " + warmupTasks.get() +
+                 " warm-up RTask(s) failed.");
+        target.warmed(finalState);
+    }
+}
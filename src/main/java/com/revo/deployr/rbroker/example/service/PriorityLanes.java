@@ -0,0 +1,184 @@
+/*
+ * PriorityLanes.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Priority and bulk scoring lanes in front of RBroker.submit.
+ *
+ * Priority RTasks are always submitted, with RBroker priority, so they
+ * are executed ahead of any queued bulk RTasks. To keep R sessions free
+ * for priority RTasks, at most (1 - reserve) of the pool concurrency
+ * may be used by bulk RTasks. Further bulk RTasks are deferred, in
+ * submission order, until a bulk RTask completes.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.util.LatencyHistogram;
+
+import com.revo.deployr.client.broker.RTask;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PriorityLanes {
+
+    /*
+     * Counters and completion latency of a single lane.
+     */
+    public static class Lane {
+
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final LatencyHistogram latency;
+        private int outstanding = 0;
+
+        Lane(long latencyWindow) {
+            this.latency = new LatencyHistogram(latencyWindow, 6);
+        }
+
+        public long getSubmitted() {
+            return submitted.get();
+        }
+
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    private static class Entry {
+        final Lane lane;
+        final long started;
+        boolean inFlight;
+
+        Entry(Lane lane, long started, boolean inFlight) {
+            this.lane = lane;
+            this.started = started;
+            this.inFlight = inFlight;
+        }
+    }
+
+    private final double reserve;
+    private final Lane priorityLane;
+    private final Lane bulkLane;
+    private final Map<RTask, Entry> entries =
+                            new IdentityHashMap<RTask, Entry>();
+    private final LinkedList<RTask> deferred = new LinkedList<RTask>();
+    private int bulkInFlight = 0;
+
+    /*
+     * A reserve of 0 never defers bulk RTasks.
+     */
+    public PriorityLanes(double reserve, long latencyWindow) {
+        this.reserve = Math.max(0.0, Math.min(reserve, 1.0));
+        this.priorityLane = new Lane(latencyWindow);
+        this.bulkLane = new Lane(latencyWindow);
+    }
+
+    /*
+     * Returns true if rTask may be submitted to the RBroker runtime
+     * now, otherwise rTask is deferred until returned by nextDeferred.
+     */
+    public synchronized boolean submit(RTask rTask, boolean priority,
+                                       int maxConcurrency) {
+
+        Lane lane = priority ? priorityLane : bulkLane;
+        lane.submitted.incrementAndGet();
+        lane.outstanding++;
+
+        boolean admit = priority || reserve == 0.0 ||
+                        bulkInFlight < bulkLimit(maxConcurrency);
+
+        entries.put(rTask, new Entry(lane, System.nanoTime(), admit));
+        if(!priority) {
+            if(admit) {
+                bulkInFlight++;
+            } else {
+                deferred.add(rTask);
+            }
+        }
+        return admit;
+    }
+
+    /*
+     * Returns the next deferred bulk RTask that may now be submitted
+     * to the RBroker runtime, or null.
+     */
+    public synchronized RTask nextDeferred(int maxConcurrency) {
+
+        if(deferred.isEmpty() || bulkInFlight >= bulkLimit(maxConcurrency)) {
+            return null;
+        }
+
+        RTask rTask = deferred.removeFirst();
+        entries.get(rTask).inFlight = true;
+        bulkInFlight++;
+        return rTask;
+    }
+
+    public synchronized void completed(RTask rTask, boolean success) {
+
+        Entry entry = entries.remove(rTask);
+        if(entry == null) {
+            return;
+        }
+
+        if(entry.lane == bulkLane && entry.inFlight) {
+            bulkInFlight--;
+        }
+
+        entry.lane.outstanding--;
+        if(success) {
+            entry.lane.succeeded.incrementAndGet();
+        } else {
+            entry.lane.failed.incrementAndGet();
+        }
+        entry.lane.latency.record(
+                    (System.nanoTime() - entry.started) / 1000000L);
+    }
+
+    public Lane getPriorityLane() {
+        return priorityLane;
+    }
+
+    public Lane getBulkLane() {
+        return bulkLane;
+    }
+
+    public synchronized int getOutstanding(Lane lane) {
+        return lane.outstanding;
+    }
+
+    public synchronized int getDeferred() {
+        return deferred.size();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private int bulkLimit(int maxConcurrency) {
+        int reserved = (int) Math.ceil(reserve * maxConcurrency);
+        return Math.max(1, maxConcurrency - reserved);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * ScoreBatcher.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Micro-batching stage in front of FraudService.submit.
+ *
+ * Coalesces pending account inputs into batches bounded by a maximum
+ * batch size and a maximum wait time. Each batch is handed to a
+ * BatchHandler which scores the whole batch as a single vectorized RTask.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+public class ScoreBatcher {
+
+    private static Logger log = Logger.getLogger(ScoreBatcher.class);
+
+    /*
+     * Receives each batch of account inputs, and their callbacks, as
+     * parallel arrays where only the first size elements are valid.
+     */
+    public interface BatchHandler {
+        void onBatch(int[] balance, int[] transactions, int[] credit,
+                     ScoreCallback[] callbacks, int size);
+    }
+
+    private final BatchHandler handler;
+    private final int maxBatchSize;
+    private final long maxWaitMillis;
+    private final ScheduledExecutorService timer;
+
+    private int[] balance;
+    private int[] transactions;
+    private int[] credit;
+    private ScoreCallback[] callbacks;
+    private int size = 0;
+    private ScheduledFuture<?> pendingFlush = null;
+
+    public ScoreBatcher(BatchHandler handler,
+                        int maxBatchSize,
+                        long maxWaitMillis) {
+
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "score-batcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        allocate();
+    }
+
+    /*
+     * Adds a single account to the current batch. The batch is flushed
+     * immediately once it reaches maxBatchSize, otherwise at most
+     * maxWaitMillis after the first account was added to it.
+     */
+    public void add(int bal, int trans, int cred, ScoreCallback callback) {
+
+        Batch full = null;
+
+        synchronized(this) {
+
+            balance[size] = bal;
+            transactions[size] = trans;
+            credit[size] = cred;
+            callbacks[size] = callback;
+            size++;
+
+            if(size >= maxBatchSize) {
+                full = drain();
+            } else
+            if(size == 1) {
+                pendingFlush = timer.schedule(new Runnable() {
+                    public void run() {
+                        flush();
+                    }
+                }, maxWaitMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if(full != null) {
+            dispatch(full);
+        }
+    }
+
+    /*
+     * Flushes the current batch, if any, regardless of size.
+     */
+    public void flush() {
+
+        Batch batch;
+
+        synchronized(this) {
+            batch = drain();
+        }
+
+        if(batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void shutdown() {
+        flush();
+        timer.shutdownNow();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private Batch drain() {
+
+        if(size == 0) {
+            return null;
+        }
+
+        if(pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        Batch batch =
+            new Batch(balance, transactions, credit, callbacks, size);
+        allocate();
+        return batch;
+    }
+
+    private void allocate() {
+        balance = new int[maxBatchSize];
+        transactions = new int[maxBatchSize];
+        credit = new int[maxBatchSize];
+        callbacks = new ScoreCallback[maxBatchSize];
+        size = 0;
+    }
+
+    private void dispatch(Batch batch) {
+        try {
+            handler.onBatch(batch.balance, batch.transactions,
+                            batch.credit, batch.callbacks, batch.size);
+        } catch(Exception ex) {
+            log.warn("ScoreBatcher: dispatch ex=" + ex);
+        }
+    }
+
+    private static class Batch {
+
+        final int[] balance;
+        final int[] transactions;
+        final int[] credit;
+        final ScoreCallback[] callbacks;
+        final int size;
+
+        Batch(int[] balance, int[] transactions, int[] credit,
+              ScoreCallback[] callbacks, int size) {
+            this.balance = balance;
+            this.transactions = transactions;
+            this.credit = credit;
+            this.callbacks = callbacks;
+            this.size = size;
+        }
+    }
+}
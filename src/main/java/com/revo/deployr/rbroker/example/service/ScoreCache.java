@@ -0,0 +1,136 @@
+/*
+ * ScoreCache.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Bounded, least-recently-used fraud score cache consulted before
+ * an account is scored on the RBroker runtime.
+ *
+ * Accounts are keyed on the packed (balance, transactions, credit)
+ * tuple. Concurrent requests for an account whose score is already
+ * being computed are collapsed onto the in-flight RTask and completed
+ * when that RTask completes.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ScoreCache {
+
+    /*
+     * Result of joining a cache miss.
+     *
+     * JOINED - score is in-flight, caller completed by the leader's RTask.
+     * LEADER - score is unknown, caller must submit an RTask.
+     */
+    public enum Miss { JOINED, LEADER }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, Double> scores;
+    private final Map<Integer, List<ScoreCallback>> inFlight =
+                            new HashMap<Integer, List<ScoreCallback>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ScoreCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.scores =
+            new LinkedHashMap<Integer, Double>(maxEntries, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                                    Map.Entry<Integer, Double> eldest) {
+                    return size() > ScoreCache.this.maxEntries;
+                }
+            };
+    }
+
+    /*
+     * Packs the bounded (balance 0-25000, transactions 0-100,
+     * credit 0-75) account inputs into a single int key.
+     */
+    public static int key(int balance, int transactions, int credit) {
+        return (balance << 14) | (transactions << 7) | credit;
+    }
+
+    /*
+     * Returns the cached score for key, or null on a cache miss.
+     */
+    public synchronized Double get(int key) {
+
+        Double score = scores.get(key);
+        if(score != null) {
+            hits.incrementAndGet();
+        }
+        return score;
+    }
+
+    /*
+     * Following a cache miss the caller either joins an RTask already
+     * in-flight for key or becomes the leader responsible for scoring
+     * key, in which case it must eventually call complete. A joined
+     * caller's callback, which may be null, is returned by complete.
+     */
+    public synchronized Miss join(int key, ScoreCallback callback) {
+
+        List<ScoreCallback> waiters = inFlight.get(key);
+        if(waiters != null) {
+            waiters.add(callback);
+            coalesced.incrementAndGet();
+            return Miss.JOINED;
+        }
+
+        inFlight.put(key, new ArrayList<ScoreCallback>(1));
+        misses.incrementAndGet();
+        return Miss.LEADER;
+    }
+
+    /*
+     * Completes the in-flight RTask for key, caching score on success.
+     * Returns the callbacks of the joined waiters awaiting the same score.
+     */
+    public synchronized List<ScoreCallback> complete(int key,
+                                                     double score,
+                                                     boolean success) {
+
+        if(success) {
+            scores.put(key, score);
+        }
+
+        List<ScoreCallback> waiters = inFlight.remove(key);
+        return (waiters != null) ?
+                    waiters : Collections.<ScoreCallback>emptyList();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return scores.size();
+    }
+}
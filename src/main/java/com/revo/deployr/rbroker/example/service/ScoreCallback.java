@@ -0,0 +1,33 @@
+/*
+ * ScoreCallback.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Completion callback for a single account scored by FraudService.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+
+import com.revo.deployr.client.broker.RTaskResult;
+
+public interface ScoreCallback {
+
+    /*
+     * Called once the account has been scored, or has failed to score.
+     * The rTaskResult is null when the score was not computed by an
+     * RTask, for example when answered from the score cache, or when
+     * the RTask failed without a result.
+     */
+    void onScore(FraudScore fraudScore, RTaskResult rTaskResult);
+}
@@ -0,0 +1,108 @@
+/*
+ * ScoreFilter.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Server-side filter of the FraudScore messages delivered to a
+ * /topic/fraud subscription, given by STOMP SUBSCRIBE headers:
+ *
+ * minScore  - successful scores below minScore are not delivered.
+ * outcome   - "success" or "failure", only FraudScores with that
+ *             outcome are delivered.
+ * statsOnly - "true", no FraudScores are delivered.
+ *
+ * RuntimeStats and ClientMessages are delivered to every subscription.
+ * Equal filters share one canonical destination, so each message is
+ * serialized once per distinct filter rather than once per client.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+
+public class ScoreFilter {
+
+    public enum Outcome { ALL, SUCCESS, FAILURE }
+
+    private final double minScore;
+    private final Outcome outcome;
+    private final boolean statsOnly;
+
+    public ScoreFilter(double minScore, Outcome outcome, boolean statsOnly) {
+        this.minScore = minScore;
+        this.outcome = outcome;
+        this.statsOnly = statsOnly;
+    }
+
+    /*
+     * Parses the SUBSCRIBE header values, any of which may be null.
+     * Returns null when no filter is given.
+     */
+    public static ScoreFilter parse(String minScore,
+                                    String outcome,
+                                    String statsOnly) {
+
+        if(minScore == null && outcome == null && statsOnly == null) {
+            return null;
+        }
+
+        return new ScoreFilter(
+            (minScore != null) ? Double.parseDouble(minScore.trim()) : 0.0,
+            (outcome != null) ?
+                Outcome.valueOf(outcome.trim().toUpperCase()) : Outcome.ALL,
+            Boolean.parseBoolean(statsOnly));
+    }
+
+    public boolean accepts(FraudScore fraudScore) {
+
+        if(statsOnly) {
+            return false;
+        }
+
+        if(fraudScore.success) {
+            return outcome != Outcome.FAILURE && fraudScore.score >= minScore;
+        }
+        return outcome != Outcome.SUCCESS;
+    }
+
+    public boolean isStatsOnly() {
+        return statsOnly;
+    }
+
+    /*
+     * Canonical destination, below base, of subscriptions with this
+     * filter.
+     */
+    public String destination(String base) {
+        return base + "/filter/" + (statsOnly ? "stats" :
+                    (outcome.name().toLowerCase() + "/" + minScore));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+
+        if(!(other instanceof ScoreFilter)) {
+            return false;
+        }
+
+        ScoreFilter filter = (ScoreFilter) other;
+        return (statsOnly && filter.statsOnly) ||
+               (!statsOnly && !filter.statsOnly &&
+                minScore == filter.minScore && outcome == filter.outcome);
+    }
+
+    @Override
+    public int hashCode() {
+        return statsOnly ? 1 :
+            31 * outcome.hashCode() + Double.valueOf(minScore).hashCode();
+    }
+}
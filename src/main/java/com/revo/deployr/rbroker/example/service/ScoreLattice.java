@@ -0,0 +1,275 @@
+/*
+ * ScoreLattice.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Memory-mapped lattice of precomputed fraud scores.
+ *
+ * The fraud model input domain is the small integer lattice
+ * balance [0-25000] x transactions [0-100] x credit [0-75], so every
+ * score can be precomputed (see LatticeMaterializer) and served with
+ * a single off-heap array lookup.
+ *
+ * File layout:
+ *
+ * [ header | slab bitmap | padding | float scores ]
+ *
+ * The header records the lattice dimensions and the SHA-256 fingerprint
+ * of the fraud model used to compute the scores. The scores for each
+ * balance are computed as one slab, the slab bitmap records which slabs
+ * have been written so an interrupted sweep can be resumed. A slab is
+ * only marked in the bitmap once its scores have been forced to disk,
+ * so a crash cannot leave a slab marked complete without its scores.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ScoreLattice {
+
+    public static final int BALANCES = 25001;
+    public static final int TRANSACTIONS = 101;
+    public static final int CREDITS = 76;
+    public static final int SLAB_SIZE = TRANSACTIONS * CREDITS;
+
+    private static final int MAGIC = 0x46534C54; // "FSLT"
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_OFFSET = 20;
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int BITMAP_OFFSET =
+                                FINGERPRINT_OFFSET + FINGERPRINT_LENGTH;
+    private static final int BITMAP_LENGTH = (BALANCES + 7) / 8;
+    private static final int DATA_OFFSET =
+                                ((BITMAP_OFFSET + BITMAP_LENGTH) / 4096 + 1) * 4096;
+    private static final long FILE_LENGTH =
+                                DATA_OFFSET + 4L * BALANCES * SLAB_SIZE;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    /*
+     * Slabs written since the last force, not yet in the bitmap.
+     */
+    private final List<Integer> unforcedSlabs = new ArrayList<Integer>();
+
+    private ScoreLattice(RandomAccessFile file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /*
+     * Opens, or creates, a lattice file for writing by the
+     * LatticeMaterializer. An existing file is only reused when it
+     * was computed from the same model, otherwise it is reset.
+     */
+    public static ScoreLattice openForWrite(File latticeFile,
+                                            byte[] fingerprint)
+                                            throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(latticeFile, "rw");
+        raf.setLength(FILE_LENGTH);
+        MappedByteBuffer buffer = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, FILE_LENGTH);
+
+        ScoreLattice lattice = new ScoreLattice(raf, buffer);
+
+        if(!lattice.hasValidHeader() ||
+           !Arrays.equals(lattice.getFingerprint(), fingerprint)) {
+
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, BALANCES);
+            buffer.putInt(12, TRANSACTIONS);
+            buffer.putInt(16, CREDITS);
+            for(int i=0; i<FINGERPRINT_LENGTH; i++) {
+                buffer.put(FINGERPRINT_OFFSET + i, fingerprint[i]);
+            }
+            for(int i=0; i<BITMAP_LENGTH; i++) {
+                buffer.put(BITMAP_OFFSET + i, (byte) 0);
+            }
+            buffer.force();
+        }
+
+        return lattice;
+    }
+
+    /*
+     * Opens a complete lattice file for serving. Fails if the file
+     * was computed from a different model or the sweep is incomplete.
+     */
+    public static ScoreLattice openForRead(File latticeFile,
+                                           byte[] fingerprint)
+                                           throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(latticeFile, "r");
+        if(raf.length() != FILE_LENGTH) {
+            raf.close();
+            throw new IOException("Lattice file " + latticeFile +
+                                  " has unexpected length.");
+        }
+
+        MappedByteBuffer buffer = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, FILE_LENGTH);
+        ScoreLattice lattice = new ScoreLattice(raf, buffer);
+
+        if(!lattice.hasValidHeader()) {
+            lattice.close();
+            throw new IOException("Lattice file " + latticeFile +
+                                  " has an invalid header.");
+        }
+
+        if(!Arrays.equals(lattice.getFingerprint(), fingerprint)) {
+            lattice.close();
+            throw new IOException("Lattice file " + latticeFile +
+                                  " was computed from a different model.");
+        }
+
+        int pending = BALANCES - lattice.completedSlabs();
+        if(pending > 0) {
+            lattice.close();
+            throw new IOException("Lattice file " + latticeFile +
+                                  " is incomplete, " + pending +
+                                  " balance slab(s) pending.");
+        }
+
+        buffer.load();
+        return lattice;
+    }
+
+    /*
+     * Computes the SHA-256 fingerprint of the fraud model file.
+     */
+    public static byte[] fingerprint(File modelFile) throws IOException {
+
+        InputStream in = new FileInputStream(modelFile);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[8192];
+            int read;
+            while((read = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+            return digest.digest();
+        } catch(java.security.NoSuchAlgorithmException nsex) {
+            throw new IOException(nsex.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    public static boolean inDomain(int balance, int transactions, int credit) {
+        return balance >= 0 && balance < BALANCES &&
+               transactions >= 0 && transactions < TRANSACTIONS &&
+               credit >= 0 && credit < CREDITS;
+    }
+
+    /*
+     * Returns the precomputed score, inputs must be inDomain.
+     */
+    public double score(int balance, int transactions, int credit) {
+        long index = ((long) balance * TRANSACTIONS + transactions)
+                                                    * CREDITS + credit;
+        return buffer.getFloat((int) (DATA_OFFSET + 4 * index));
+    }
+
+    /*
+     * Writes the SLAB_SIZE scores for balance, ordered by transactions
+     * then credit. The slab is marked complete by the next force.
+     */
+    public void writeSlab(int balance, double[] scores) {
+
+        int offset = (int) (DATA_OFFSET + 4L * balance * SLAB_SIZE);
+        for(int i=0; i<SLAB_SIZE; i++) {
+            buffer.putFloat(offset + 4 * i, (float) scores[i]);
+        }
+
+        synchronized(this) {
+            unforcedSlabs.add(balance);
+        }
+    }
+
+    public synchronized boolean isSlabComplete(int balance) {
+        byte bits = buffer.get(BITMAP_OFFSET + (balance >> 3));
+        return (bits & (1 << (balance & 7))) != 0;
+    }
+
+    public int completedSlabs() {
+        int completed = 0;
+        for(int balance=0; balance<BALANCES; balance++) {
+            if(isSlabComplete(balance)) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /*
+     * Flushes written slabs to disk, then marks them complete in the
+     * slab bitmap and flushes the bitmap.
+     */
+    public void force() {
+
+        List<Integer> slabs;
+        synchronized(this) {
+            slabs = new ArrayList<Integer>(unforcedSlabs);
+            unforcedSlabs.clear();
+        }
+
+        buffer.force();
+
+        synchronized(this) {
+            for(int balance : slabs) {
+                int bitmapIndex = BITMAP_OFFSET + (balance >> 3);
+                byte bits = buffer.get(bitmapIndex);
+                buffer.put(bitmapIndex,
+                           (byte) (bits | (1 << (balance & 7))));
+            }
+        }
+
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private boolean hasValidHeader() {
+        return buffer.getInt(0) == MAGIC &&
+               buffer.getInt(4) == VERSION &&
+               buffer.getInt(8) == BALANCES &&
+               buffer.getInt(12) == TRANSACTIONS &&
+               buffer.getInt(16) == CREDITS;
+    }
+
+    private byte[] getFingerprint() {
+        byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+        for(int i=0; i<FINGERPRINT_LENGTH; i++) {
+            fingerprint[i] = buffer.get(FINGERPRINT_OFFSET + i);
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * ScorePublisher.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Coalescing, rate-limited STOMP publisher for /topic/fraud.
+ *
+ * With a publish interval configured, FraudScore messages are buffered
+ * and pushed as FraudScoreBatch messages once per interval, and only the
+ * latest RuntimeStats message of each interval is pushed. ClientMessage
+ * alerts are always pushed immediately.
+ *
+ * With ScoreSubscriptions, each message is pushed once per distinct
+ * ScoreFilter of the current subscribers, carrying only the FraudScores
+ * that filter accepts, and nothing is pushed while there are no
+ * subscribers. Binary subscriptions are sent WireEncoding frames, with
+ * RuntimeStats delta encoded against the previous RuntimeStats sent to
+ * the same destination.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.ClientMessage;
+import com.revo.deployr.rbroker.example.model.FraudScore;
+import com.revo.deployr.rbroker.example.model.FraudScoreBatch;
+import com.revo.deployr.rbroker.example.model.RuntimeStats;
+import com.revo.deployr.rbroker.example.util.TaskEvents;
+import com.revo.deployr.rbroker.example.util.WireEncoding;
+
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.log4j.Logger;
+
+public class ScorePublisher {
+
+    private static Logger log = Logger.getLogger(ScorePublisher.class);
+
+    /*
+     * Every KEYFRAME_INTERVAL binary RuntimeStats frames per destination
+     * are sent in full. Numeric deltas add up in any order, but other
+     * fields are replaced, and the clientOutboundChannel does not
+     * guarantee delivery order.
+     */
+    private static final int KEYFRAME_INTERVAL = 20;
+
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final String destination;
+    private final ScoreSubscriptions scoreSubscriptions;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+    private final TaskEvents taskEvents = TaskEvents.get();
+
+    private final ConcurrentLinkedQueue<FraudScore> pendingScores =
+                                new ConcurrentLinkedQueue<FraudScore>();
+    private final AtomicReference<RuntimeStats> pendingStats =
+                                new AtomicReference<RuntimeStats>();
+
+    /*
+     * Previous RuntimeStats, and frame count, per binary destination,
+     * reset whenever a client subscribes.
+     */
+    private final Map<String, RuntimeStats> binaryStats =
+                                new HashMap<String, RuntimeStats>();
+    private final Map<String, Integer> binaryFrames =
+                                new HashMap<String, Integer>();
+    private long binaryGeneration = -1L;
+
+    /*
+     * A publishInterval of 0 pushes every message immediately. A null
+     * scoreSubscriptions pushes every message to destination.
+     */
+    public ScorePublisher(SimpMessagingTemplate simpMessagingTemplate,
+                          String destination,
+                          ScoreSubscriptions scoreSubscriptions,
+                          long publishInterval,
+                          int maxBatchSize) {
+
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.destination = destination;
+        this.scoreSubscriptions = scoreSubscriptions;
+        this.maxBatchSize = maxBatchSize;
+
+        if(publishInterval > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "score-publisher");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            timer.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, publishInterval, publishInterval, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    public void publish(FraudScore fraudScore) {
+        if(timer != null) {
+            pendingScores.offer(fraudScore);
+        } else {
+            send(fraudScore);
+        }
+    }
+
+    public void publish(RuntimeStats runtimeStats) {
+        if(timer != null) {
+            pendingStats.set(runtimeStats);
+        } else {
+            send(runtimeStats);
+        }
+    }
+
+    public void publish(ClientMessage clientMessage) {
+        send(clientMessage);
+    }
+
+    /*
+     * Pushes all buffered FraudScore messages, in batches of at most
+     * maxBatchSize, followed by the latest RuntimeStats message.
+     */
+    public void flush() {
+
+        List<FraudScore> scores = null;
+        FraudScore fraudScore;
+
+        while((fraudScore = pendingScores.poll()) != null) {
+
+            if(scores == null) {
+                scores = new ArrayList<FraudScore>();
+            }
+            scores.add(fraudScore);
+
+            if(scores.size() >= maxBatchSize) {
+                sendBatch(scores);
+                scores = null;
+            }
+        }
+
+        if(scores != null) {
+            sendBatch(scores);
+        }
+
+        RuntimeStats runtimeStats = pendingStats.getAndSet(null);
+        if(runtimeStats != null) {
+            send(runtimeStats);
+        }
+    }
+
+    public void shutdown() {
+        if(timer != null) {
+            timer.shutdownNow();
+            flush();
+        }
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void sendBatch(List<FraudScore> scores) {
+        FraudScoreBatch fraudScoreBatch = new FraudScoreBatch();
+        fraudScoreBatch.scores = scores;
+        send(fraudScoreBatch);
+    }
+
+    private void send(Object message) {
+
+        if(scoreSubscriptions == null) {
+            send(destination, message, false);
+            return;
+        }
+
+        for(ScoreSubscriptions.Target target : scoreSubscriptions.getTargets()) {
+            Object filtered = filter(message, target.filter);
+            if(filtered != null) {
+                send(target.destination, filtered, target.binary);
+            }
+        }
+    }
+
+    private void send(String target, Object message, boolean binary) {
+        try {
+            Object publish = taskEvents.publishStarted();
+            // Push message over STOMP Web Socket to clients.
+            if(!binary) {
+                simpMessagingTemplate.convertAndSend(target, message);
+            } else
+            if(message instanceof RuntimeStats) {
+                sendBinaryStats(target, (RuntimeStats) message);
+            } else {
+                simpMessagingTemplate.convertAndSend(target, encode(message));
+            }
+            if(publish != null) {
+                taskEvents.messagePublished(publish, msgType(message),
+                                            scores(message));
+            }
+        } catch(Exception ex) {
+            log.warn("ScorePublisher: send ex=" + ex);
+        }
+    }
+
+    /*
+     * Encodes and sends runtimeStats under lock, so successive frames
+     * to target are encoded against the frame before.
+     */
+    private synchronized void sendBinaryStats(String target,
+                                              RuntimeStats runtimeStats) {
+
+        long generation = scoreSubscriptions.getGeneration();
+        if(generation != binaryGeneration) {
+            binaryStats.clear();
+            binaryFrames.clear();
+            binaryGeneration = generation;
+        }
+
+        Integer frames = binaryFrames.get(target);
+        frames = (frames == null) ? 0 : frames + 1;
+        RuntimeStats previous = (frames % KEYFRAME_INTERVAL != 0) ?
+                                            binaryStats.get(target) : null;
+
+        simpMessagingTemplate.convertAndSend(target,
+                        WireEncoding.encodeStats(runtimeStats, previous));
+        binaryStats.put(target, runtimeStats);
+        binaryFrames.put(target, frames);
+    }
+
+    private static String encode(Object message) {
+        if(message instanceof FraudScore) {
+            return WireEncoding.encodeScores(
+                        Collections.singletonList((FraudScore) message));
+        } else
+        if(message instanceof FraudScoreBatch) {
+            return WireEncoding.encodeScores(
+                        ((FraudScoreBatch) message).scores);
+        }
+        return WireEncoding.encodeClientMessage((ClientMessage) message);
+    }
+
+    /*
+     * Returns message, or the part of message, accepted by filter, or
+     * null when nothing is accepted.
+     */
+    private static Object filter(Object message, ScoreFilter filter) {
+
+        if(filter == null) {
+            return message;
+        } else
+        if(message instanceof FraudScore) {
+            return filter.accepts((FraudScore) message) ? message : null;
+        } else
+        if(message instanceof FraudScoreBatch) {
+
+            if(filter.isStatsOnly()) {
+                return null;
+            }
+
+            List<FraudScore> scores = ((FraudScoreBatch) message).scores;
+            List<FraudScore> accepted = new ArrayList<FraudScore>();
+            for(FraudScore fraudScore : scores) {
+                if(filter.accepts(fraudScore)) {
+                    accepted.add(fraudScore);
+                }
+            }
+
+            if(accepted.isEmpty()) {
+                return null;
+            } else
+            if(accepted.size() == scores.size()) {
+                return message;
+            }
+
+            FraudScoreBatch fraudScoreBatch = new FraudScoreBatch();
+            fraudScoreBatch.scores = accepted;
+            return fraudScoreBatch;
+        }
+        return message;
+    }
+
+    private static String msgType(Object message) {
+        if(message instanceof FraudScore) {
+            return ((FraudScore) message).msgType;
+        } else
+        if(message instanceof FraudScoreBatch) {
+            return ((FraudScoreBatch) message).msgType;
+        } else
+        if(message instanceof RuntimeStats) {
+            return ((RuntimeStats) message).msgType;
+        } else
+        if(message instanceof ClientMessage) {
+            return ((ClientMessage) message).msgType;
+        }
+        return message.getClass().getSimpleName();
+    }
+
+    private static int scores(Object message) {
+        if(message instanceof FraudScore) {
+            return 1;
+        } else
+        if(message instanceof FraudScoreBatch) {
+            return ((FraudScoreBatch) message).scores.size();
+        }
+        return 0;
+    }
+}
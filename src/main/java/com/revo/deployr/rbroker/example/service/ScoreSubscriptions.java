@@ -0,0 +1,155 @@
+/*
+ * ScoreSubscriptions.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Registry of client subscriptions to /topic/fraud, by ScoreFilter and
+ * wire encoding.
+ *
+ * Maintained from STOMP SUBSCRIBE, UNSUBSCRIBE and DISCONNECT frames by
+ * ScoreSubscriptionInterceptor and read by ScorePublisher on every
+ * publish, so the targets are kept as an immutable snapshot replaced
+ * only when subscriptions change.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+@Service
+public class ScoreSubscriptions {
+
+    /*
+     * Destination of the subscriptions sharing one filter and encoding,
+     * a null filter receives every message.
+     */
+    public static class Target {
+
+        public final ScoreFilter filter;
+        public final boolean binary;
+        public final String destination;
+
+        Target(ScoreFilter filter, boolean binary, String destination) {
+            this.filter = filter;
+            this.binary = binary;
+            this.destination = destination;
+        }
+    }
+
+    private static class Subscription {
+        final String sessionId;
+        final String subscriptionId;
+        final ScoreFilter filter;
+        final boolean binary;
+
+        Subscription(String sessionId, String subscriptionId,
+                     ScoreFilter filter, boolean binary) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.filter = filter;
+            this.binary = binary;
+        }
+
+        String destination() {
+            String destination = (filter != null) ?
+                        filter.destination(FRAUDMSGTOPIC) : FRAUDMSGTOPIC;
+            return binary ? destination + "/binary" : destination;
+        }
+    }
+
+    public static final String FRAUDMSGTOPIC = "/topic/fraud";
+
+    private final List<Subscription> subscriptions =
+                                        new ArrayList<Subscription>();
+    private volatile List<Target> targets = Collections.emptyList();
+    private volatile long generation = 0L;
+
+    /*
+     * Registers a subscription and returns its destination. Binary
+     * subscriptions receive messages in the WireEncoding format.
+     */
+    public synchronized String subscribe(String sessionId,
+                                         String subscriptionId,
+                                         ScoreFilter filter,
+                                         boolean binary) {
+
+        Subscription subscription =
+            new Subscription(sessionId, subscriptionId, filter, binary);
+        subscriptions.add(subscription);
+        generation++;
+        rebuild();
+        return subscription.destination();
+    }
+
+    public synchronized void unsubscribe(String sessionId,
+                                         String subscriptionId) {
+
+        Iterator<Subscription> it = subscriptions.iterator();
+        while(it.hasNext()) {
+            Subscription subscription = it.next();
+            if(subscription.sessionId.equals(sessionId) &&
+               subscription.subscriptionId.equals(subscriptionId)) {
+                it.remove();
+            }
+        }
+        rebuild();
+    }
+
+    public synchronized void disconnect(String sessionId) {
+
+        Iterator<Subscription> it = subscriptions.iterator();
+        while(it.hasNext()) {
+            if(it.next().sessionId.equals(sessionId)) {
+                it.remove();
+            }
+        }
+        rebuild();
+    }
+
+    /*
+     * One Target per distinct filter with at least one subscription.
+     */
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    /*
+     * Incremented on every subscribe, so delta encoded state can be
+     * resent in full to new subscribers.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void rebuild() {
+
+        Map<String, Target> distinct = new LinkedHashMap<String, Target>();
+
+        for(Subscription subscription : subscriptions) {
+            String destination = subscription.destination();
+            if(!distinct.containsKey(destination)) {
+                distinct.put(destination,
+                    new Target(subscription.filter, subscription.binary,
+                               destination));
+            }
+        }
+
+        targets = Collections.unmodifiableList(
+                            new ArrayList<Target>(distinct.values()));
+    }
+}
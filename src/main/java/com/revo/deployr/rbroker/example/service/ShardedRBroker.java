@@ -0,0 +1,389 @@
+/*
+ * ShardedRBroker.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * RBroker that shards RTasks across one pooled RBroker per DeployR
+ * endpoint.
+ *
+ * Each RTask is routed to the healthy shard with the fewest outstanding
+ * RTasks per R session, or with Routing.LATENCY, the shortest expected
+ * wait given the moving average time on call of each shard. A shard is
+ * unhealthy while disconnected and for a retry interval after a runtime
+ * error. Runtime errors are only passed to RBrokerListeners once no
+ * shard is connected. Runtime stats from every shard are aggregated
+ * before being passed to RBrokerListeners.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.model.ShardStats;
+
+import com.revo.deployr.client.broker.*;
+import com.revo.deployr.client.broker.config.RBrokerConfig;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+public class ShardedRBroker implements RBroker {
+
+    private static Logger log = Logger.getLogger(ShardedRBroker.class);
+
+    public enum Routing { OUTSTANDING, LATENCY }
+
+    private static final double CALL_TIME_WEIGHT = 0.2;
+
+    private final List<Shard> shards = new ArrayList<Shard>();
+    private final Routing routing;
+    private final long retryMillis;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final Map<RTask, Shard> inFlight =
+        Collections.synchronizedMap(new IdentityHashMap<RTask, Shard>());
+    private final List<RTaskListener> taskListeners =
+                        new CopyOnWriteArrayList<RTaskListener>();
+    private final List<RBrokerListener> brokerListeners =
+                        new CopyOnWriteArrayList<RBrokerListener>();
+
+    public ShardedRBroker(List<String> endpoints,
+                          List<RBroker> brokers,
+                          Routing routing,
+                          long retryMillis) {
+
+        this.routing = routing;
+        this.retryMillis = retryMillis;
+
+        for(int i=0; i<brokers.size(); i++) {
+            Shard shard = new Shard(endpoints.get(i), brokers.get(i));
+            shard.broker.addTaskListener(shard);
+            shard.broker.addBrokerListener(shard);
+            shards.add(shard);
+        }
+    }
+
+    /*
+     * RBroker Implementation.
+     */
+
+    public RTaskToken submit(RTask task)
+            throws RBrokerException, IllegalArgumentException {
+        return submit(task, false);
+    }
+
+    /*
+     * Submits to the best shard, failing over to the next best shard
+     * when a submit is refused.
+     */
+    public RTaskToken submit(RTask task, boolean priority)
+            throws RBrokerException, IllegalArgumentException {
+
+        Set<Shard> refused = null;
+        RBrokerException lastException = null;
+
+        for(int attempt=0; attempt<shards.size(); attempt++) {
+
+            Shard shard = route(refused);
+            if(shard == null) {
+                break;
+            }
+
+            shard.outstanding.incrementAndGet();
+            inFlight.put(task, shard);
+
+            try {
+                return shard.broker.submit(task, priority);
+            } catch(Exception ex) {
+
+                inFlight.remove(task);
+                shard.outstanding.decrementAndGet();
+                shard.markUnhealthy();
+                log.warn("ShardedRBroker: submit to " + shard.endpoint +
+                                                    " failed, ex=" + ex);
+
+                if(refused == null) {
+                    refused = new HashSet<Shard>();
+                }
+                refused.add(shard);
+                lastException = new RBrokerException(ex.getMessage());
+            }
+        }
+
+        throw (lastException != null) ? lastException :
+                new RBrokerException("No DeployR endpoint available.");
+    }
+
+    public RBrokerStatus status() {
+
+        RBrokerStatus status = new RBrokerStatus();
+        List<Boolean> executing = new ArrayList<Boolean>();
+
+        for(Shard shard : shards) {
+            RBrokerStatus shardStatus = shard.broker.status();
+            status.pendingTasks += shardStatus.pendingTasks;
+            for(boolean busy : shardStatus.executingTasks) {
+                executing.add(busy);
+            }
+        }
+
+        status.executingTasks = new boolean[executing.size()];
+        for(int i=0; i<executing.size(); i++) {
+            status.executingTasks[i] = executing.get(i);
+        }
+        return status;
+    }
+
+    public void flush() {
+        for(Shard shard : shards) {
+            shard.broker.flush();
+        }
+    }
+
+    public boolean isIdle() {
+        for(Shard shard : shards) {
+            if(!shard.broker.isIdle()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Connected while any shard is connected.
+     */
+    public boolean isConnected() {
+        for(Shard shard : shards) {
+            if(shard.broker.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int maxConcurrency() {
+        int maxConcurrency = 0;
+        for(Shard shard : shards) {
+            maxConcurrency += shard.broker.maxConcurrency();
+        }
+        return maxConcurrency;
+    }
+
+    public void refresh(RBrokerConfig config)
+            throws RBrokerException {
+        throw new RBrokerException(
+                "ShardedRBroker refresh is not supported, build a new pool.");
+    }
+
+    public void shutdown() {
+        for(Shard shard : shards) {
+            shard.broker.shutdown();
+        }
+    }
+
+    public void addTaskListener(RTaskListener listener) {
+        taskListeners.add(listener);
+    }
+
+    public void addBrokerListener(RBrokerListener listener) {
+        brokerListeners.add(listener);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public List<ShardStats> getShardStats() {
+
+        List<ShardStats> shardStats = new ArrayList<ShardStats>(shards.size());
+
+        for(Shard shard : shards) {
+
+            ShardStats stats = new ShardStats();
+            stats.endpoint = shard.endpoint;
+            stats.healthy = shard.isHealthy();
+            stats.maxConcurrency = shard.broker.maxConcurrency();
+            stats.outstandingTasks = shard.outstanding.get();
+            stats.averageCallTime = Math.round(shard.averageCallTime);
+
+            RBrokerRuntimeStats latest = shard.latestStats;
+            if(latest != null) {
+                stats.submittedTasks = latest.totalTasksRun;
+                stats.successfulTasks = latest.totalTasksRunToSuccess;
+                stats.failedTasks = latest.totalTasksRunToFailure;
+            }
+
+            shardStats.add(stats);
+        }
+
+        return shardStats;
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    /*
+     * Picks the healthy shard, not in excluded, with the lowest routing
+     * cost. Falls back to unhealthy shards when no shard is healthy.
+     * Ties are broken round-robin.
+     */
+    private Shard route(Set<Shard> excluded) {
+
+        Shard best = null;
+        double bestCost = Double.MAX_VALUE;
+        boolean bestHealthy = false;
+
+        int start = (nextShard.getAndIncrement() & Integer.MAX_VALUE)
+                                                        % shards.size();
+
+        for(int i=0; i<shards.size(); i++) {
+
+            Shard shard = shards.get((start + i) % shards.size());
+            if(excluded != null && excluded.contains(shard)) {
+                continue;
+            }
+
+            boolean healthy = shard.isHealthy();
+            double cost = cost(shard);
+
+            if(best == null || (healthy && !bestHealthy) ||
+               (healthy == bestHealthy && cost < bestCost)) {
+                best = shard;
+                bestCost = cost;
+                bestHealthy = healthy;
+            }
+        }
+
+        return best;
+    }
+
+    private double cost(Shard shard) {
+
+        double load = (double) shard.outstanding.get() /
+                            Math.max(1, shard.broker.maxConcurrency());
+
+        if(routing == Routing.LATENCY) {
+            /*
+             * Expected wait, in calls, times the moving average call.
+             */
+            return (load + 1.0) * Math.max(1.0, shard.averageCallTime);
+        }
+
+        return load;
+    }
+
+    private void notifyRuntimeStats() {
+
+        RBrokerRuntimeStats total = new RBrokerRuntimeStats();
+        int maxConcurrency = 0;
+
+        for(Shard shard : shards) {
+
+            maxConcurrency += shard.broker.maxConcurrency();
+
+            RBrokerRuntimeStats latest = shard.latestStats;
+            if(latest != null) {
+                total.totalTasksRun += latest.totalTasksRun;
+                total.totalTasksRunToSuccess += latest.totalTasksRunToSuccess;
+                total.totalTasksRunToFailure += latest.totalTasksRunToFailure;
+                total.totalTimeTasksOnCode += latest.totalTimeTasksOnCode;
+                total.totalTimeTasksOnServer += latest.totalTimeTasksOnServer;
+                total.totalTimeTasksOnCall += latest.totalTimeTasksOnCall;
+            }
+        }
+
+        for(RBrokerListener listener : brokerListeners) {
+            listener.onRuntimeStats(total, maxConcurrency);
+        }
+    }
+
+    /*
+     * A single DeployR endpoint and its pooled RBroker.
+     */
+    private class Shard implements RTaskListener, RBrokerListener {
+
+        final String endpoint;
+        final RBroker broker;
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        volatile long unhealthyUntil = 0L;
+        volatile double averageCallTime = 0.0;
+        volatile RBrokerRuntimeStats latestStats = null;
+
+        Shard(String endpoint, RBroker broker) {
+            this.endpoint = endpoint;
+            this.broker = broker;
+        }
+
+        boolean isHealthy() {
+            return System.currentTimeMillis() >= unhealthyUntil &&
+                   broker.isConnected();
+        }
+
+        void markUnhealthy() {
+            unhealthyUntil = System.currentTimeMillis() + retryMillis;
+        }
+
+        public void onTaskCompleted(RTask rTask, RTaskResult rTaskResult) {
+
+            if(inFlight.remove(rTask) != null) {
+                outstanding.decrementAndGet();
+            }
+
+            if(rTaskResult != null && rTaskResult.isSuccess()) {
+                averageCallTime = (averageCallTime == 0.0) ?
+                    rTaskResult.getTimeOnCall() :
+                    averageCallTime + CALL_TIME_WEIGHT *
+                        (rTaskResult.getTimeOnCall() - averageCallTime);
+            }
+
+            for(RTaskListener listener : taskListeners) {
+                listener.onTaskCompleted(rTask, rTaskResult);
+            }
+        }
+
+        public void onTaskError(RTask rTask, Throwable throwable) {
+
+            if(inFlight.remove(rTask) != null) {
+                outstanding.decrementAndGet();
+            }
+
+            if(!broker.isConnected()) {
+                markUnhealthy();
+            }
+
+            for(RTaskListener listener : taskListeners) {
+                listener.onTaskError(rTask, throwable);
+            }
+        }
+
+        public void onRuntimeError(Throwable throwable) {
+
+            markUnhealthy();
+            log.warn("ShardedRBroker: " + endpoint +
+                     " unhealthy, runtime error=" + throwable);
+
+            if(ShardedRBroker.this.isConnected()) {
+                return;
+            }
+            for(RBrokerListener listener : brokerListeners) {
+                listener.onRuntimeError(throwable);
+            }
+        }
+
+        public void onRuntimeStats(RBrokerRuntimeStats stats,
+                                   int maxConcurrency) {
+            latestStats = stats;
+            notifyRuntimeStats();
+        }
+    }
+}
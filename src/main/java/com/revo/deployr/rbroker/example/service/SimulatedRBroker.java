@@ -0,0 +1,585 @@
+/*
+ * SimulatedRBroker.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * In-process stand-in for a PooledTaskBroker, used for load testing the
+ * example without a DeployR server.
+ *
+ * Each simulated R session is a worker thread that executes one RTask at
+ * a time, taking priority RTasks first. The time on code, server overhead
+ * and network latency of each RTask are drawn from log-normal distributions
+ * and the worker is held for the full time on call. RTasks are scored by
+ * a TreeScorer when the exported fraud model is available.
+ *
+ * Failures are injected as unsuccessful RTaskResults, disconnects as an
+ * outage during which isConnected() is false and every RTask fails.
+ *
+ * Every submitted RTask that is not cancelled completes through the
+ * RTaskListeners, including RTasks discarded by flush or shutdown, which
+ * fail with an RBrokerException.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.client.broker.*;
+import com.revo.deployr.client.broker.config.RBrokerConfig;
+import com.revo.deployr.client.broker.options.PooledTaskOptions;
+import com.revo.deployr.client.broker.task.PooledTask;
+import com.revo.deployr.client.data.RData;
+import com.revo.deployr.client.data.RNumeric;
+import com.revo.deployr.client.data.RNumericVector;
+import com.revo.deployr.client.factory.RDataFactory;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class SimulatedRBroker implements RBroker {
+
+    private static Logger log = Logger.getLogger(SimulatedRBroker.class);
+
+    /*
+     * Log-normal latency distribution, in milliseconds, given by its
+     * median and 99th percentile.
+     */
+    public static class Latency {
+
+        private static final double Z99 = 2.3263;
+
+        private final double mu;
+        private final double sigma;
+
+        public Latency(double median, double p99) {
+            this.mu = Math.log(Math.max(median, 1e-3));
+            this.sigma = (p99 > median) ? (Math.log(p99) - mu) / Z99 : 0.0;
+        }
+
+        /*
+         * Parses "median,p99" or a constant "median".
+         */
+        public static Latency parse(String latency) {
+            String[] values = latency.split(",");
+            double median = Double.parseDouble(values[0].trim());
+            double p99 = (values.length > 1) ?
+                            Double.parseDouble(values[1].trim()) : median;
+            return new Latency(median, p99);
+        }
+
+        public long sample(Random random) {
+            if(sigma == 0.0) {
+                return Math.round(Math.exp(mu));
+            }
+            return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+        }
+    }
+
+    private final int maxConcurrency;
+    private final Latency codeLatency;
+    private final Latency serverLatency;
+    private final Latency networkLatency;
+    private final double failureRate;
+    private final double disconnectRate;
+    private final long outageMillis;
+    private final TreeScorer treeScorer;
+
+    private final PriorityBlockingQueue<SimulatedTaskToken> pending =
+                        new PriorityBlockingQueue<SimulatedTaskToken>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final boolean[] executing;
+    private final AtomicInteger executingCount = new AtomicInteger();
+    /*
+     * RTasks submitted and not yet completed or cancelled.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Thread[] sessions;
+    private final RBrokerRuntimeStats stats = new RBrokerRuntimeStats();
+    private final List<RTaskListener> taskListeners =
+                        new CopyOnWriteArrayList<RTaskListener>();
+    private final List<RBrokerListener> brokerListeners =
+                        new CopyOnWriteArrayList<RBrokerListener>();
+
+    private volatile long disconnectedUntil = 0L;
+    private volatile boolean shutdown = false;
+
+    public SimulatedRBroker(int poolSize,
+                            Latency codeLatency,
+                            Latency serverLatency,
+                            Latency networkLatency,
+                            double failureRate,
+                            double disconnectRate,
+                            long outageMillis,
+                            TreeScorer treeScorer,
+                            long seed) {
+
+        this.maxConcurrency = Math.max(1, poolSize);
+        this.codeLatency = codeLatency;
+        this.serverLatency = serverLatency;
+        this.networkLatency = networkLatency;
+        this.failureRate = failureRate;
+        this.disconnectRate = disconnectRate;
+        this.outageMillis = outageMillis;
+        this.treeScorer = treeScorer;
+
+        this.executing = new boolean[maxConcurrency];
+        this.sessions = new Thread[maxConcurrency];
+        for(int i=0; i<maxConcurrency; i++) {
+            sessions[i] = new Thread(new Session(i, new Random(seed + i)),
+                                     "simulated-rsession-" + i);
+            sessions[i].setDaemon(true);
+            sessions[i].start();
+        }
+    }
+
+    /*
+     * Builds a SimulatedRBroker from the simulated.* system properties.
+     */
+    public static SimulatedRBroker fromSystemProperties(int poolSize) {
+
+        TreeScorer treeScorer = null;
+        String treeFile = System.getProperty("scorer.model",
+                                             "analytics/fraudModel.tree");
+        try {
+            treeScorer = TreeScorer.load(new java.io.File(treeFile));
+        } catch(Exception ex) {
+            log.warn("SimulatedRBroker: fraud model unavailable, " +
+                     "scoring 0.0, ex=" + ex);
+        }
+
+        return new SimulatedRBroker(poolSize,
+            Latency.parse(System.getProperty("simulated.code", "20,80")),
+            Latency.parse(System.getProperty("simulated.server", "5,20")),
+            Latency.parse(System.getProperty("simulated.network", "2,10")),
+            Double.parseDouble(System.getProperty("simulated.failure", "0")),
+            Double.parseDouble(System.getProperty("simulated.disconnect", "0")),
+            Long.getLong("simulated.outage", 5000L),
+            treeScorer,
+            Long.getLong("simulated.seed", System.nanoTime()));
+    }
+
+    /*
+     * RBroker Implementation.
+     */
+
+    public RTaskToken submit(RTask task)
+            throws RBrokerException, IllegalArgumentException {
+        return submit(task, false);
+    }
+
+    public RTaskToken submit(RTask task, boolean priority)
+            throws RBrokerException, IllegalArgumentException {
+
+        if(task == null) {
+            throw new IllegalArgumentException("RTask must not be null.");
+        }
+        if(shutdown) {
+            throw new RBrokerException("RBroker has been shutdown.");
+        }
+
+        SimulatedTaskToken token = new SimulatedTaskToken(task, priority,
+                                            sequence.getAndIncrement());
+        outstanding.incrementAndGet();
+        pending.offer(token);
+        return token;
+    }
+
+    public RBrokerStatus status() {
+        RBrokerStatus status = new RBrokerStatus();
+        status.pendingTasks = pending.size();
+        synchronized(executing) {
+            status.executingTasks = executing.clone();
+        }
+        return status;
+    }
+
+    public void flush() {
+        discardPending("RTask flushed from RBroker.");
+    }
+
+    /*
+     * Idle once every submitted RTask has been delivered to the
+     * RTaskListeners, including RTasks a session has taken from pending
+     * but not yet started, which neither pending nor executingCount
+     * would show.
+     */
+    public boolean isIdle() {
+        return outstanding.get() == 0;
+    }
+
+    public boolean isConnected() {
+        return System.currentTimeMillis() >= disconnectedUntil;
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /*
+     * The simulated pool has no server-side state to refresh.
+     */
+    public void refresh(RBrokerConfig config) throws RBrokerException {
+    }
+
+    /*
+     * RTasks still pending fail, RTasks executing fail once their
+     * session is interrupted.
+     */
+    public void shutdown() {
+        shutdown = true;
+        discardPending("RBroker has been shutdown.");
+        for(Thread session : sessions) {
+            session.interrupt();
+        }
+    }
+
+    public void addTaskListener(RTaskListener listener) {
+        taskListeners.add(listener);
+    }
+
+    public void addBrokerListener(RBrokerListener listener) {
+        brokerListeners.add(listener);
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private class Session implements Runnable {
+
+        private final int index;
+        private final Random random;
+
+        Session(int index, Random random) {
+            this.index = index;
+            this.random = random;
+        }
+
+        public void run() {
+
+            while(!shutdown) {
+
+                SimulatedTaskToken token;
+                try {
+                    token = pending.take();
+                } catch(InterruptedException iex) {
+                    break;
+                }
+
+                if(!token.start()) {
+                    continue;
+                }
+
+                setExecuting(index, true);
+                try {
+                    execute(token, random);
+                } catch(InterruptedException iex) {
+                    fail(token, new RBrokerException(
+                                        "RBroker has been shutdown."));
+                    break;
+                } finally {
+                    setExecuting(index, false);
+                }
+            }
+        }
+    }
+
+    private void execute(SimulatedTaskToken token, Random random)
+                                            throws InterruptedException {
+
+        if(isConnected() && disconnectRate > 0 &&
+           random.nextDouble() < disconnectRate) {
+            disconnectedUntil = System.currentTimeMillis() + outageMillis;
+            log.warn("SimulatedRBroker: injected disconnect for " +
+                                                    outageMillis + "ms.");
+        }
+
+        if(!isConnected()) {
+            fail(token, new RBrokerException(
+                        "Simulated DeployR server connection lost."));
+            return;
+        }
+
+        long timeOnCode = codeLatency.sample(random);
+        long timeOnServer = timeOnCode + serverLatency.sample(random);
+        long timeOnCall = timeOnServer + networkLatency.sample(random);
+        Thread.sleep(timeOnCall);
+
+        SimulatedTaskResult result;
+        if(failureRate > 0 && random.nextDouble() < failureRate) {
+            result = new SimulatedTaskResult(null, "Simulated RTask failure.",
+                                             timeOnCode, timeOnServer,
+                                             timeOnCall);
+        } else {
+            result = new SimulatedTaskResult(score(token.task), null,
+                                             timeOnCode, timeOnServer,
+                                             timeOnCall);
+        }
+
+        synchronized(stats) {
+            stats.totalTasksRun++;
+            if(result.isSuccess()) {
+                stats.totalTasksRunToSuccess++;
+                stats.totalTimeTasksOnCode += timeOnCode;
+                stats.totalTimeTasksOnServer += timeOnServer;
+                stats.totalTimeTasksOnCall += timeOnCall;
+            } else {
+                stats.totalTasksRunToFailure++;
+            }
+        }
+
+        token.complete(result, null);
+        for(RTaskListener listener : taskListeners) {
+            try {
+                listener.onTaskCompleted(token.task, result);
+            } catch(Exception ex) {
+                log.warn("SimulatedRBroker: onTaskCompleted ex=" + ex);
+            }
+        }
+        outstanding.decrementAndGet();
+        notifyRuntimeStats();
+    }
+
+    private void fail(SimulatedTaskToken token, Throwable throwable) {
+
+        synchronized(stats) {
+            stats.totalTasksRun++;
+            stats.totalTasksRunToFailure++;
+        }
+
+        token.complete(null, throwable);
+        for(RTaskListener listener : taskListeners) {
+            try {
+                listener.onTaskError(token.task, throwable);
+            } catch(Exception ex) {
+                log.warn("SimulatedRBroker: onTaskError ex=" + ex);
+            }
+        }
+        outstanding.decrementAndGet();
+        notifyRuntimeStats();
+    }
+
+    private void discardPending(String reason) {
+
+        List<SimulatedTaskToken> discarded =
+                                    new ArrayList<SimulatedTaskToken>();
+        pending.drainTo(discarded);
+
+        for(SimulatedTaskToken token : discarded) {
+            if(token.start()) {
+                fail(token, new RBrokerException(reason));
+            }
+        }
+    }
+
+    private void notifyRuntimeStats() {
+
+        RBrokerRuntimeStats snapshot = new RBrokerRuntimeStats();
+        synchronized(stats) {
+            snapshot.totalTasksRun = stats.totalTasksRun;
+            snapshot.totalTasksRunToSuccess = stats.totalTasksRunToSuccess;
+            snapshot.totalTasksRunToFailure = stats.totalTasksRunToFailure;
+            snapshot.totalTimeTasksOnCode = stats.totalTimeTasksOnCode;
+            snapshot.totalTimeTasksOnServer = stats.totalTimeTasksOnServer;
+            snapshot.totalTimeTasksOnCall = stats.totalTimeTasksOnCall;
+        }
+
+        for(RBrokerListener listener : brokerListeners) {
+            try {
+                listener.onRuntimeStats(snapshot, maxConcurrency);
+            } catch(Exception ex) {
+                log.warn("SimulatedRBroker: onRuntimeStats ex=" + ex);
+            }
+        }
+    }
+
+    private void setExecuting(int index, boolean busy) {
+        synchronized(executing) {
+            executing[index] = busy;
+        }
+        if(busy) {
+            executingCount.incrementAndGet();
+        } else {
+            executingCount.decrementAndGet();
+        }
+    }
+
+    /*
+     * Scores the numeric inputs of a pooled RTask built by FraudService,
+     * returning x as a scalar or vector to match the inputs.
+     */
+    private RData score(RTask task) {
+
+        List<RData> rinputs = ((PooledTaskOptions)((PooledTask)task).options).rinputs;
+
+        if(rinputs.get(0) instanceof RNumericVector) {
+
+            List<Double> balance = ((RNumericVector) rinputs.get(0)).getValue();
+            List<Double> transactions = ((RNumericVector) rinputs.get(1)).getValue();
+            List<Double> credit = ((RNumericVector) rinputs.get(2)).getValue();
+
+            List<Double> scores = new ArrayList<Double>(balance.size());
+            for(int i=0; i<balance.size(); i++) {
+                scores.add(score(balance.get(i).intValue(),
+                                 transactions.get(i).intValue(),
+                                 credit.get(i).intValue()));
+            }
+            return RDataFactory.createNumericVector("x", scores);
+        }
+
+        return RDataFactory.createNumeric("x",
+                    score((int) ((RNumeric) rinputs.get(0)).getValue(),
+                          (int) ((RNumeric) rinputs.get(1)).getValue(),
+                          (int) ((RNumeric) rinputs.get(2)).getValue()));
+    }
+
+    private double score(int balance, int transactions, int credit) {
+        return (treeScorer != null) ?
+                    treeScorer.score(balance, transactions, credit) : 0.0;
+    }
+
+    private class SimulatedTaskToken
+                implements RTaskToken, Comparable<SimulatedTaskToken> {
+
+        static final int PENDING = 0;
+        static final int STARTED = 1;
+        static final int CANCELLED = 2;
+
+        final RTask task;
+        final boolean priority;
+        final long sequence;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private volatile RTaskResult result;
+        private volatile Throwable throwable;
+
+        SimulatedTaskToken(RTask task, boolean priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        boolean start() {
+            return state.compareAndSet(PENDING, STARTED);
+        }
+
+        void complete(RTaskResult result, Throwable throwable) {
+            this.result = result;
+            this.throwable = throwable;
+            done.countDown();
+        }
+
+        public RTask getTask() {
+            return task;
+        }
+
+        public RTaskResult getResult()
+                    throws InterruptedException, ExecutionException {
+            done.await();
+            if(throwable != null) {
+                throw new ExecutionException(throwable);
+            }
+            return result;
+        }
+
+        public boolean cancel(boolean mayInterrupt) {
+            if(state.compareAndSet(PENDING, CANCELLED)) {
+                pending.remove(this);
+                outstanding.decrementAndGet();
+                done.countDown();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public int compareTo(SimulatedTaskToken other) {
+            if(priority != other.priority) {
+                return priority ? -1 : 1;
+            }
+            return (sequence < other.sequence) ? -1 :
+                        ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    private static class SimulatedTaskResult implements RTaskResult {
+
+        private final List<RData> generatedObjects;
+        private final String failure;
+        private final long timeOnCode;
+        private final long timeOnServer;
+        private final long timeOnCall;
+
+        SimulatedTaskResult(RData x, String failure, long timeOnCode,
+                            long timeOnServer, long timeOnCall) {
+            this.generatedObjects = (x != null) ?
+                Collections.singletonList(x) : Collections.<RData>emptyList();
+            this.failure = failure;
+            this.timeOnCode = timeOnCode;
+            this.timeOnServer = timeOnServer;
+            this.timeOnCall = timeOnCall;
+        }
+
+        public String getID() {
+            return null;
+        }
+
+        public RTaskType getType() {
+            return RTaskType.POOLED;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+
+        public long getTimeOnCode() {
+            return timeOnCode;
+        }
+
+        public long getTimeOnServer() {
+            return timeOnServer;
+        }
+
+        public long getTimeOnCall() {
+            return timeOnCall;
+        }
+
+        public List<URL> getGeneratedPlots() {
+            return Collections.emptyList();
+        }
+
+        public List<URL> getGeneratedFiles() {
+            return Collections.emptyList();
+        }
+
+        public List<RData> getGeneratedObjects() {
+            return generatedObjects;
+        }
+
+        public List<URL> getStoredFiles() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * SyntheticWorkload.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Seeded, reproducible synthetic scoring workload.
+ *
+ * Each account field is drawn from its own Distribution, given as:
+ *
+ *   uniform:MAX            uniform in [0, MAX)
+ *   zipf:MAX,S             0 most frequent, rank r drawn with weight 1/r^S
+ *   lognormal:MEDIAN,P99   log-normal, optionally capped by ,MAX
+ *
+ * A share of accounts can be drawn from a fixed set of hot accounts,
+ * which are scored repeatedly, as when the same cards are seen many
+ * times a day. Arrivals are immediate, Poisson at a mean rate, or
+ * bursty, where bursts of back-to-back accounts arrive as a Poisson
+ * process at the same mean rate.
+ *
+ * With the same seed and configuration the same accounts and arrivals
+ * are generated, in the same order.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.util.FastRandom;
+
+import org.apache.log4j.Logger;
+
+public class SyntheticWorkload implements WorkloadGenerator {
+
+    private static Logger log = Logger.getLogger(SyntheticWorkload.class);
+
+    /*
+     * Distribution of a single non-negative account field.
+     */
+    public interface Distribution {
+        int sample(FastRandom random);
+    }
+
+    public static class Uniform implements Distribution {
+
+        private final int max;
+
+        public Uniform(int max) {
+            this.max = Math.max(1, max);
+        }
+
+        public int sample(FastRandom random) {
+            return random.nextInt(max);
+        }
+    }
+
+    /*
+     * Zipf over [0, max) by rejection-inversion (Hormann and Derflinger),
+     * constant time and without tables however large max is.
+     */
+    public static class Zipf implements Distribution {
+
+        private final int max;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralMax;
+        private final double s;
+
+        public Zipf(int max, double exponent) {
+            this.max = Math.max(1, max);
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1.0;
+            this.hIntegralMax = hIntegral(this.max + 0.5);
+            this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+        }
+
+        public int sample(FastRandom random) {
+
+            while(true) {
+
+                double u = hIntegralMax +
+                           random.nextDouble() * (hIntegralX1 - hIntegralMax);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if(k < 1) {
+                    k = 1;
+                } else
+                if(k > max) {
+                    k = max;
+                }
+
+                if(k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k - 1;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1.0 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1.0, x * (1.0 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        /*
+         * log1p(x)/x and expm1(x)/x, accurate as x approaches 0.
+         */
+        private static double helper1(double x) {
+            return (Math.abs(x) > 1e-8) ? Math.log1p(x) / x :
+                        1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        private static double helper2(double x) {
+            return (Math.abs(x) > 1e-8) ? Math.expm1(x) / x :
+                        1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        }
+    }
+
+    /*
+     * Log-normal given by its median and 99th percentile, as for
+     * SimulatedRBroker.Latency, capped at max.
+     */
+    public static class LogNormal implements Distribution {
+
+        private static final double Z99 = 2.3263;
+
+        private final double mu;
+        private final double sigma;
+        private final int max;
+
+        public LogNormal(double median, double p99, int max) {
+            this.mu = Math.log(Math.max(median, 1e-3));
+            this.sigma = (p99 > median) ? (Math.log(p99) - mu) / Z99 : 0.0;
+            this.max = max;
+        }
+
+        public int sample(FastRandom random) {
+            double value = Math.exp(mu + sigma * random.nextGaussian());
+            return (int) Math.min(value, max - 1);
+        }
+    }
+
+    private final FastRandom random;
+    private final Distribution balance;
+    private final Distribution transactions;
+    private final Distribution credit;
+
+    private final int[][] hotAccounts;
+    private final double hotShare;
+
+    private final double meanGap;
+    private final int burstSize;
+    private int burstRemaining = 0;
+
+    /*
+     * meanGap is the mean time between arrivals in nanoseconds, 0 for
+     * immediate arrivals, with arrivals in bursts of burstSize.
+     */
+    public SyntheticWorkload(long seed,
+                             Distribution balance,
+                             Distribution transactions,
+                             Distribution credit,
+                             int hotCount,
+                             double hotShare,
+                             double meanGap,
+                             int burstSize) {
+
+        this.random = new FastRandom(seed);
+        this.balance = balance;
+        this.transactions = transactions;
+        this.credit = credit;
+        this.hotShare = hotShare;
+        this.meanGap = meanGap;
+        this.burstSize = Math.max(1, burstSize);
+
+        this.hotAccounts = new int[Math.max(0, hotCount)][];
+        for(int i=0; i<hotAccounts.length; i++) {
+            hotAccounts[i] = new int[] { balance.sample(random),
+                                         transactions.sample(random),
+                                         credit.sample(random) };
+        }
+    }
+
+    /*
+     * Builds the WorkloadGenerator named by -Dworkload.class, otherwise
+     * a SyntheticWorkload configured by the workload.* properties. The
+     * defaults match the uniform demo data of earlier releases.
+     */
+    public static WorkloadGenerator fromSystemProperties() {
+
+        String workloadClass = System.getProperty("workload.class");
+        if(workloadClass != null) {
+            try {
+                return (WorkloadGenerator)
+                    Class.forName(workloadClass).newInstance();
+            } catch(Exception ex) {
+                log.warn("SyntheticWorkload: " + workloadClass +
+                         " unavailable, ex=" + ex);
+            }
+        }
+
+        Long seed = Long.getLong("workload.seed");
+        if(seed == null) {
+            seed = System.nanoTime();
+        }
+
+        String[] hot = System.getProperty("workload.hot", "0,0").split(",");
+
+        double meanGap = 0.0;
+        int burstSize = 1;
+        String arrivals = System.getProperty("workload.arrivals", "none");
+        if(!"none".equals(arrivals)) {
+            String[] args = arguments(arrivals);
+            double rate = Double.parseDouble(args[0]);
+            if(arrivals.startsWith("bursty:")) {
+                burstSize = Integer.parseInt(args[1].trim());
+            } else
+            if(!arrivals.startsWith("poisson:")) {
+                throw new IllegalArgumentException(
+                        "Unknown workload.arrivals " + arrivals);
+            }
+            meanGap = 1e9 / rate;
+        }
+
+        log.info("Workload seed=" + seed + ", arrivals=" + arrivals + ".");
+
+        return new SyntheticWorkload(seed,
+            distribution(System.getProperty("workload.balance", "uniform:25000")),
+            distribution(System.getProperty("workload.transactions", "uniform:100")),
+            distribution(System.getProperty("workload.credit", "uniform:75")),
+            Integer.parseInt(hot[0].trim()),
+            (hot.length > 1) ? Double.parseDouble(hot[1].trim()) : 0.0,
+            meanGap, burstSize);
+    }
+
+    /*
+     * Parses uniform:MAX, zipf:MAX,S or lognormal:MEDIAN,P99[,MAX].
+     */
+    public static Distribution distribution(String spec) {
+
+        String[] args = arguments(spec);
+
+        if(spec.startsWith("uniform:")) {
+            return new Uniform(Integer.parseInt(args[0].trim()));
+        }
+        if(spec.startsWith("zipf:")) {
+            return new Zipf(Integer.parseInt(args[0].trim()),
+                            Double.parseDouble(args[1].trim()));
+        }
+        if(spec.startsWith("lognormal:")) {
+            return new LogNormal(Double.parseDouble(args[0].trim()),
+                                 Double.parseDouble(args[1].trim()),
+                                 (args.length > 2) ?
+                                    Integer.parseInt(args[2].trim()) :
+                                    Integer.MAX_VALUE);
+        }
+        throw new IllegalArgumentException("Unknown distribution " + spec);
+    }
+
+    /*
+     * WorkloadGenerator Implementation.
+     */
+
+    public synchronized void next(int[] account) {
+
+        if(hotAccounts.length > 0 && random.nextDouble() < hotShare) {
+            int[] hotAccount = hotAccounts[random.nextInt(hotAccounts.length)];
+            account[0] = hotAccount[0];
+            account[1] = hotAccount[1];
+            account[2] = hotAccount[2];
+            return;
+        }
+
+        account[0] = balance.sample(random);
+        account[1] = transactions.sample(random);
+        account[2] = credit.sample(random);
+    }
+
+    public synchronized long nextArrival() {
+
+        if(meanGap == 0.0) {
+            return 0L;
+        }
+
+        if(burstRemaining > 0) {
+            burstRemaining--;
+            return 0L;
+        }
+
+        burstRemaining = burstSize - 1;
+        return (long) random.nextExponential(meanGap * burstSize);
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static String[] arguments(String spec) {
+        return spec.substring(spec.indexOf(':') + 1).split(",");
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * TaskHedger.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Hedged RTasks, to cut the tail latency caused by slow R sessions.
+ *
+ * An RTask still outstanding once it has been running for longer than
+ * the given percentile of recent RTask call times is hedged: a duplicate
+ * RTask is submitted, which the RBroker runtime runs on another R
+ * session. The first of the pair to succeed wins. A losing hedge is
+ * cancelled, if still queued, and a losing original, which is already
+ * running, is ignored when it completes. A failure
+ * only completes the pair once neither RTask is outstanding. At most
+ * budget hedges are submitted per RTask submitted.
+ *
+ * Call times of the original RTasks, including losers, are recorded
+ * separately from the time to the winning result, so the tail latency
+ * with and without hedging can be compared.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import com.revo.deployr.rbroker.example.util.LatencyHistogram;
+
+import com.revo.deployr.client.broker.RTask;
+import com.revo.deployr.client.broker.RTaskToken;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class TaskHedger {
+
+    private static Logger log = Logger.getLogger(TaskHedger.class);
+
+    /*
+     * Hedge threshold recomputed once every THRESHOLD_TICKS ticks.
+     */
+    private static final int THRESHOLD_TICKS = 20;
+
+    public interface HedgeSubmitter {
+
+        /*
+         * Returns a duplicate of rTask, or null.
+         */
+        RTask duplicate(RTask rTask);
+
+        /*
+         * Submits hedge, returns null if it was not submitted.
+         */
+        RTaskToken submit(RTask hedge, boolean priority);
+
+        /*
+         * The losing RTask of a pair was cancelled before it ran, so
+         * it will not complete.
+         */
+        void cancelled(RTask loser);
+    }
+
+    /*
+     * An original RTask, and its hedge once submitted.
+     */
+    private static class Pending {
+        final RTask rTask;
+        final boolean priority;
+        final long submitted;
+        RTask hedge;
+        RTaskToken hedgeToken;
+        int outstanding = 1;
+        boolean done;
+
+        Pending(RTask rTask, boolean priority) {
+            this.rTask = rTask;
+            this.priority = priority;
+            this.submitted = System.nanoTime();
+        }
+    }
+
+    private final HedgeSubmitter submitter;
+    private final double percentile;
+    private final long minDelay;
+    private final double budget;
+    private final ScheduledExecutorService timer;
+
+    /*
+     * Every outstanding RTask, original or hedge, to its Pending.
+     */
+    private final Map<RTask, Pending> pending =
+                                new IdentityHashMap<RTask, Pending>();
+    /*
+     * Original RTasks, in submit order, not yet considered for a hedge.
+     */
+    private final ConcurrentLinkedQueue<Pending> queue =
+                                new ConcurrentLinkedQueue<Pending>();
+
+    private final LatencyHistogram callTimes;
+    private final LatencyHistogram resultTimes;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private volatile long threshold = 0L;
+    private int ticks = 0;
+
+    public TaskHedger(HedgeSubmitter submitter,
+                      double percentile,
+                      long minDelay,
+                      double budget,
+                      long tick,
+                      long latencyWindow) {
+
+        this.submitter = submitter;
+        this.percentile = percentile;
+        this.minDelay = Math.max(1L, minDelay);
+        this.budget = budget;
+        this.callTimes = new LatencyHistogram(latencyWindow, 6);
+        this.resultTimes = new LatencyHistogram(latencyWindow, 6);
+
+        timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "rtask-hedger");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    hedge();
+                } catch(Exception ex) {
+                    log.warn("TaskHedger: hedge ex=" + ex);
+                }
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Tracks rTask for hedging, before it is submitted to the RBroker
+     * runtime, so that its completion is never seen untracked.
+     */
+    public void track(RTask rTask, boolean priority) {
+
+        Pending entry = new Pending(rTask, priority);
+        synchronized(pending) {
+            pending.put(rTask, entry);
+        }
+        submitted.incrementAndGet();
+        queue.offer(entry);
+    }
+
+    /*
+     * Stops tracking rTask, which the RBroker runtime refused.
+     */
+    public void forget(RTask rTask) {
+        synchronized(pending) {
+            Pending entry = pending.remove(rTask);
+            if(entry != null) {
+                entry.done = true;
+            }
+        }
+    }
+
+    /*
+     * Called on completion of rTask, original or hedge. Returns the
+     * original RTask when the pair completes, rTask itself if it is
+     * not tracked, or null if the completion must be ignored.
+     */
+    public RTask completed(RTask rTask, boolean success) {
+
+        Pending entry;
+        RTask loser = null;
+        RTaskToken loserToken = null;
+        long now = System.nanoTime();
+
+        synchronized(pending) {
+
+            entry = pending.remove(rTask);
+            if(entry == null) {
+                return rTask;
+            }
+
+            entry.outstanding--;
+            if(rTask == entry.rTask && success) {
+                callTimes.record((now - entry.submitted) / 1000000L);
+            }
+
+            if(entry.done || (!success && entry.outstanding > 0)) {
+                return null;
+            }
+
+            entry.done = true;
+            if(entry.outstanding > 0 && rTask == entry.rTask) {
+                loser = entry.hedge;
+                loserToken = entry.hedgeToken;
+            }
+        }
+
+        resultTimes.record((now - entry.submitted) / 1000000L);
+        if(rTask != entry.rTask && success) {
+            hedgeWins.incrementAndGet();
+        }
+
+        if(loser != null && loserToken != null) {
+            cancel(loser, loserToken);
+        }
+
+        return entry.rTask;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getHedged() {
+        return hedged.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getOverBudget() {
+        return overBudget.get();
+    }
+
+    /*
+     * Call times, in milliseconds, of original RTasks, as they would be
+     * without hedging.
+     */
+    public LatencyHistogram getCallTimes() {
+        return callTimes;
+    }
+
+    /*
+     * Time, in milliseconds, from submit to the winning result.
+     */
+    public LatencyHistogram getResultTimes() {
+        return resultTimes;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    /*
+     * Hedges each original RTask, oldest first, outstanding for longer
+     * than the threshold. An empty call time window disables hedging,
+     * rather than hedging every RTask.
+     */
+    private void hedge() {
+
+        if(ticks++ % THRESHOLD_TICKS == 0) {
+            long recent = callTimes.percentile(percentile);
+            threshold = (recent > 0) ? Math.max(minDelay, recent) : 0L;
+        }
+
+        if(threshold == 0L) {
+            queue.clear();
+            return;
+        }
+
+        long cutoff = System.nanoTime() - threshold * 1000000L;
+        Pending entry;
+
+        while((entry = queue.peek()) != null && entry.submitted <= cutoff) {
+
+            queue.poll();
+
+            synchronized(pending) {
+                if(entry.done || entry.outstanding == 0) {
+                    continue;
+                }
+            }
+
+            if(hedged.get() >= budget * submitted.get()) {
+                overBudget.incrementAndGet();
+                continue;
+            }
+
+            RTask hedge = submitter.duplicate(entry.rTask);
+            if(hedge == null) {
+                continue;
+            }
+
+            synchronized(pending) {
+                if(entry.done) {
+                    continue;
+                }
+                entry.hedge = hedge;
+                entry.outstanding++;
+                pending.put(hedge, entry);
+            }
+
+            RTaskToken hedgeToken = submitter.submit(hedge, entry.priority);
+
+            boolean cancel = false;
+            synchronized(pending) {
+                if(hedgeToken == null) {
+                    pending.remove(hedge);
+                    entry.outstanding--;
+                    entry.hedge = null;
+                    continue;
+                }
+                entry.hedgeToken = hedgeToken;
+                cancel = entry.done && pending.containsKey(hedge);
+            }
+
+            hedged.incrementAndGet();
+
+            if(cancel) {
+                /*
+                 * The original completed while the hedge was submitted.
+                 */
+                cancel(hedge, hedgeToken);
+            }
+        }
+    }
+
+    private void cancel(RTask loser, RTaskToken loserToken) {
+
+        try {
+            if(!loserToken.cancel(false)) {
+                return;
+            }
+        } catch(Exception ex) {
+            return;
+        }
+
+        synchronized(pending) {
+            if(pending.remove(loser) == null) {
+                return;
+            }
+        }
+        submitter.cancelled(loser);
+    }
+}
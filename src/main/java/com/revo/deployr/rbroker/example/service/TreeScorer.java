@@ -0,0 +1,183 @@
+/*
+ * TreeScorer.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * In-process fraud scoring engine.
+ *
+ * Evaluates the rpart regression tree fitted in analytics/fraudModel.rData,
+ * as exported by analytics/exportFraudModel.R, on primitive inputs without
+ * allocation. Trees using any split other than a numeric threshold on
+ * balance, numTrans or creditLine are rejected as unsupported.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TreeScorer {
+
+    private static final int LEAF = -1;
+    private static final int BALANCE = 0;
+    private static final int TRANSACTIONS = 1;
+    private static final int CREDIT = 2;
+
+    /*
+     * Tree nodes as parallel arrays indexed by position, root first.
+     */
+    private final int[] var;
+    private final boolean[] lessGoesLeft;
+    private final double[] split;
+    private final int[] left;
+    private final int[] right;
+    private final double[] yval;
+
+    private TreeScorer(int nodes) {
+        var = new int[nodes];
+        lessGoesLeft = new boolean[nodes];
+        split = new double[nodes];
+        left = new int[nodes];
+        right = new int[nodes];
+        yval = new double[nodes];
+    }
+
+    /*
+     * Loads an exported tree, throws UnsupportedOperationException
+     * when the tree uses a split this scorer cannot evaluate.
+     */
+    public static TreeScorer load(File treeFile) throws IOException {
+
+        Map<Integer, String[]> rows = new LinkedHashMap<Integer, String[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(treeFile));
+
+        try {
+
+            String header = reader.readLine();
+            if(header == null || !header.equals("node,var,ncat,split,yval")) {
+                throw new UnsupportedOperationException(
+                    "Unsupported fraud model export format: " + header);
+            }
+
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.length() > 0) {
+                    String[] row = line.split(",");
+                    rows.put(Integer.valueOf(row[0]), row);
+                }
+            }
+
+        } finally {
+            reader.close();
+        }
+
+        if(rows.isEmpty() || rows.keySet().iterator().next() != 1) {
+            throw new UnsupportedOperationException(
+                "Fraud model export does not start at the root node.");
+        }
+
+        /*
+         * Number nodes by pre-order position, root first, so evaluation
+         * follows array indices rather than rpart node numbers.
+         */
+        Map<Integer, Integer> position = new HashMap<Integer, Integer>();
+        for(Integer node : rows.keySet()) {
+            position.put(node, position.size());
+        }
+
+        TreeScorer scorer = new TreeScorer(rows.size());
+
+        for(Map.Entry<Integer, String[]> entry : rows.entrySet()) {
+
+            int node = entry.getKey();
+            String[] row = entry.getValue();
+            int i = position.get(node);
+
+            scorer.var[i] = parseVar(row[1]);
+            scorer.yval[i] = Double.parseDouble(row[4]);
+
+            if(scorer.var[i] != LEAF) {
+
+                Integer leftChild = position.get(2 * node);
+                Integer rightChild = position.get(2 * node + 1);
+                if(leftChild == null || rightChild == null) {
+                    throw new UnsupportedOperationException(
+                        "Fraud model node " + node + " is missing a child.");
+                }
+
+                int ncat = (int) Double.parseDouble(row[2]);
+                if(ncat != -1 && ncat != 1) {
+                    throw new UnsupportedOperationException(
+                        "Fraud model node " + node +
+                        " uses a categorical split.");
+                }
+
+                scorer.lessGoesLeft[i] = (ncat == -1);
+                scorer.split[i] = Double.parseDouble(row[3]);
+                scorer.left[i] = leftChild;
+                scorer.right[i] = rightChild;
+            }
+        }
+
+        return scorer;
+    }
+
+    /*
+     * Scores a single account, allocation-free.
+     */
+    public double score(int balance, int transactions, int credit) {
+
+        int i = 0;
+
+        while(var[i] != LEAF) {
+
+            double x;
+            switch(var[i]) {
+                case BALANCE: x = balance; break;
+                case TRANSACTIONS: x = transactions; break;
+                default: x = credit; break;
+            }
+
+            i = ((x < split[i]) == lessGoesLeft[i]) ? left[i] : right[i];
+        }
+
+        return yval[i];
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static int parseVar(String var) {
+
+        if(var.equals("<leaf>")) {
+            return LEAF;
+        } else
+        if(var.equals("balance")) {
+            return BALANCE;
+        } else
+        if(var.equals("numTrans")) {
+            return TRANSACTIONS;
+        } else
+        if(var.equals("creditLine")) {
+            return CREDIT;
+        }
+
+        throw new UnsupportedOperationException(
+            "Unsupported fraud model variable: " + var);
+    }
+}
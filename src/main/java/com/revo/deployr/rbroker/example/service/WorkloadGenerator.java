@@ -0,0 +1,35 @@
+/*
+ * WorkloadGenerator.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Source of demo account data and arrival times for generated scoring
+ * workloads. SyntheticWorkload is the default implementation, another
+ * may be named by -Dworkload.class.
+ */
+package com.revo.deployr.rbroker.example.service;
+
+public interface WorkloadGenerator {
+
+    /*
+     * Fills account with the balance, transactions and credit of the
+     * next demo account. Must be thread-safe.
+     */
+    void next(int[] account);
+
+    /*
+     * Returns the time, in nanoseconds, to wait before scoring the
+     * next demo account, 0 to score it at once. Must be thread-safe.
+     */
+    long nextArrival();
+}
@@ -0,0 +1,85 @@
+/*
+ * FastRandom.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Seeded SplitMix64 pseudo-random source.
+ *
+ * Unlike java.util.Random there is no atomic seed update, so drawing a
+ * value never allocates or contends. Not thread-safe, callers either
+ * own an instance per thread or synchronize. The same seed always
+ * produces the same sequence.
+ */
+package com.revo.deployr.rbroker.example.util;
+
+public class FastRandom {
+
+    private long state;
+    private double spareGaussian;
+    private boolean hasSpareGaussian = false;
+
+    public FastRandom(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+     * Uniform in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /*
+     * Uniform in [0, bound), bound must be positive.
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    /*
+     * Standard normal, by the Marsaglia polar method.
+     */
+    public double nextGaussian() {
+
+        if(hasSpareGaussian) {
+            hasSpareGaussian = false;
+            return spareGaussian;
+        }
+
+        double u, v, s;
+        do {
+            u = 2.0 * nextDouble() - 1.0;
+            v = 2.0 * nextDouble() - 1.0;
+            s = u * u + v * v;
+        } while(s >= 1.0 || s == 0.0);
+
+        double scale = Math.sqrt(-2.0 * Math.log(s) / s);
+        spareGaussian = v * scale;
+        hasSpareGaussian = true;
+        return u * scale;
+    }
+
+    /*
+     * Exponential with the given mean.
+     */
+    public double nextExponential(double mean) {
+        return -mean * Math.log(1.0 - nextDouble());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Lock-free, rolling window, high dynamic range latency histogram.
+ *
+ * Values are recorded into log-linear buckets: exact below 128, then 64
+ * buckets per power of two, so any recorded value is reported within
+ * 1.6% of its true value. The window is divided into slots, each
+ * covering an equal interval of time, and a slot is reset when first
+ * recorded into after the window has moved past it. Recording never
+ * allocates. The recorder that resets a slot marks it RESETTING until
+ * the counts are cleared, so values recorded for the new interval are
+ * never wiped by the reset, concurrent recorders into that slot wait
+ * for the reset to finish.
+ */
+package com.revo.deployr.rbroker.example.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int BUCKETS =
+                    LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    /*
+     * Slot epoch while its counts are being cleared.
+     */
+    private static final long RESETTING = Long.MIN_VALUE;
+
+    private final long slotMillis;
+    private final AtomicLongArray[] slotCounts;
+    private final AtomicLong[] slotEpochs;
+
+    public LatencyHistogram(long windowMillis, int slots) {
+
+        this.slotMillis = Math.max(1, windowMillis / slots);
+        this.slotCounts = new AtomicLongArray[slots];
+        this.slotEpochs = new AtomicLong[slots];
+
+        for(int i=0; i<slots; i++) {
+            slotCounts[i] = new AtomicLongArray(BUCKETS);
+            slotEpochs[i] = new AtomicLong(-1);
+        }
+    }
+
+    /*
+     * Records a single non-negative value, e.g. a time in milliseconds.
+     */
+    public void record(long value) {
+
+        long epoch = System.currentTimeMillis() / slotMillis;
+        int slot = (int) (epoch % slotCounts.length);
+        AtomicLongArray counts = slotCounts[slot];
+
+        AtomicLong slotEpoch = slotEpochs[slot];
+        while(true) {
+
+            long current = slotEpoch.get();
+            if(current >= epoch) {
+                break;
+            }
+
+            if(current == RESETTING) {
+                Thread.yield();
+                continue;
+            }
+
+            if(slotEpoch.compareAndSet(current, RESETTING)) {
+                /*
+                 * First record into this slot since the window moved
+                 * past it, discard the counts of the expired interval
+                 * before any value is recorded for the new interval.
+                 */
+                for(int i=0; i<BUCKETS; i++) {
+                    counts.set(i, 0);
+                }
+                slotEpoch.set(epoch);
+                break;
+            }
+        }
+
+        counts.incrementAndGet(bucket(Math.max(0, value)));
+    }
+
+    /*
+     * Returns the value at percentile (0-100) over the current window,
+     * or 0 if nothing was recorded within the window.
+     */
+    public long percentile(double percentile) {
+        return percentiles(new double[] { percentile })[0];
+    }
+
+    /*
+     * Returns the values at each of the ascending percentiles (0-100)
+     * over the current window.
+     */
+    public long[] percentiles(double[] percentiles) {
+
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+
+        long epoch = System.currentTimeMillis() / slotMillis;
+        for(int slot=0; slot<slotCounts.length; slot++) {
+            long slotEpoch = slotEpochs[slot].get();
+            if(slotEpoch >= 0 && epoch - slotEpoch < slotCounts.length) {
+                for(int i=0; i<BUCKETS; i++) {
+                    long count = slotCounts[slot].get(i);
+                    merged[i] += count;
+                    total += count;
+                }
+            }
+        }
+
+        long[] values = new long[percentiles.length];
+        if(total == 0) {
+            return values;
+        }
+
+        int p = 0;
+        long seen = 0;
+        for(int i=0; i<BUCKETS && p<percentiles.length; i++) {
+            seen += merged[i];
+            while(p < percentiles.length &&
+                  seen >= Math.ceil(total * percentiles[p] / 100.0) &&
+                  seen > 0) {
+                values[p++] = value(i);
+            }
+        }
+
+        return values;
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static int bucket(long value) {
+
+        if(value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * Highest value held by bucket.
+     */
+    private static long value(int bucket) {
+
+        if(bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -22,6 +22,8 @@ import com.revo.deployr.client.broker.RTaskType;
 import com.revo.deployr.client.broker.RTaskResult;
 import com.revo.deployr.client.broker.RBrokerRuntimeStats;
 
+import com.revo.deployr.rbroker.example.model.LatencyPercentiles;
+
 import org.apache.log4j.Logger;
 
 public class RBrokerStatsHelper {
@@ -66,6 +68,20 @@ public class RBrokerStatsHelper {
                                                 displayAvgTimeOnCall + " ]\n");
     }
 
+    /**
+     * Prints {@link com.revo.deployr.rbroker.example.model.LatencyPercentiles}
+     * to console output.
+     */
+    public static void printLatencyPercentiles(String name,
+                                               LatencyPercentiles latency) {
+
+        log.info("RBroker: Task " + name + " [ p50 : " +
+                latency.p50 + " , p90 : " +
+                latency.p90 + " , p99 : " +
+                latency.p99 + " , p99.9 : " +
+                latency.p999 + " ]");
+    }
+
     /**
      * Prints {@link com.revo.deployr.client.broker.RTaskResult}
      * to console output.
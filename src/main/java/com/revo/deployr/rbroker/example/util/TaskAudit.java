@@ -0,0 +1,351 @@
+/*
+ * TaskAudit.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Sampled, asynchronous binary audit log of scored accounts.
+ *
+ * Completions are queued on the completion thread and written by a
+ * single writer thread as fixed-width records, one per scored account,
+ * into a ring of memory-mapped segment files. Once every segment is
+ * full the oldest segment is overwritten. One in every sample successful
+ * RTasks is audited. Failed RTasks are audited if queue space frees up
+ * within FAILURE_WAIT milliseconds, otherwise they are only recorded by
+ * the failure log line, so an outage cannot stall the completion thread.
+ *
+ * Record layout, RECORD_SIZE bytes, big-endian:
+ *
+ *   0  long    sequence, from 1, written last
+ *   8  long    timestamp, milliseconds since the epoch
+ *  16  int     balance
+ *  20  int     transactions
+ *  24  int     credit
+ *  28  int     accounts scored by the RTask
+ *  32  double  score
+ *  40  int     time on code, milliseconds
+ *  44  int     time on server, milliseconds
+ *  48  int     time on call, milliseconds
+ *  52  byte    outcome, OK, FAILED or ERROR
+ *  53  byte    cause length
+ *  56  byte[]  cause, UTF-8, truncated to CAUSE_SIZE bytes
+ *
+ * Use AuditDump to print the segments as text.
+ */
+package com.revo.deployr.rbroker.example.util;
+
+import com.revo.deployr.rbroker.example.model.FraudScore;
+
+import com.revo.deployr.client.broker.RTaskResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class TaskAudit {
+
+    private static Logger log = Logger.getLogger(TaskAudit.class);
+
+    public static final int RECORD_SIZE = 128;
+    public static final int CAUSE_OFFSET = 56;
+    public static final int CAUSE_SIZE = RECORD_SIZE - CAUSE_OFFSET;
+
+    public static final byte OK = 0;
+    public static final byte FAILED = 1;
+    public static final byte ERROR = 2;
+
+    private static final long FAILURE_WAIT = 50L;
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /*
+     * A single audited RTask completion.
+     */
+    private static class Entry {
+        final long timestamp;
+        final List<FraudScore> fraudScores;
+        final byte outcome;
+        final long timeOnCode;
+        final long timeOnServer;
+        final long timeOnCall;
+        final String cause;
+
+        Entry(List<FraudScore> fraudScores, byte outcome,
+              long timeOnCode, long timeOnServer, long timeOnCall,
+              String cause) {
+            this.timestamp = System.currentTimeMillis();
+            this.fraudScores = fraudScores;
+            this.outcome = outcome;
+            this.timeOnCode = timeOnCode;
+            this.timeOnServer = timeOnServer;
+            this.timeOnCall = timeOnCall;
+            this.cause = cause;
+        }
+    }
+
+    private final File directory;
+    private final int segments;
+    private final int recordsPerSegment;
+    private final int sample;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong completions = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong droppedFailures = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private int segment;
+    private MappedByteBuffer mapped = null;
+    private long sequence;
+
+    /*
+     * Opens, or creates, segments files of segmentSize bytes in
+     * directory. Writing resumes in the segment after the most
+     * recently started segment.
+     */
+    public TaskAudit(File directory, int segments, long segmentSize,
+                     int sample, int queueSize) throws IOException {
+
+        this.directory = directory;
+        this.segments = Math.max(2, segments);
+        this.recordsPerSegment =
+            (int) Math.max(1, Math.min(segmentSize, Integer.MAX_VALUE) /
+                                                        RECORD_SIZE);
+        this.sample = Math.max(1, sample);
+        this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Audit directory " + directory +
+                                  " could not be created.");
+        }
+
+        /*
+         * Resume after the segment with the highest first sequence,
+         * the newest segment, whose records are all below the first
+         * sequence of the next lap.
+         */
+        long newest = 0;
+        int newestSegment = -1;
+        for(int i=0; i<this.segments; i++) {
+            long first = firstSequence(segmentFile(directory, i));
+            if(first > newest) {
+                newest = first;
+                newestSegment = i;
+            }
+        }
+        this.segment = (newestSegment + 1) % this.segments;
+        this.sequence = (newestSegment < 0) ? 1 : newest + recordsPerSegment;
+        map(segment);
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "task-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static boolean isSegmentFile(File file) {
+        return file.getName().startsWith(SEGMENT_PREFIX) &&
+               file.getName().endsWith(SEGMENT_SUFFIX);
+    }
+
+    public static File segmentFile(File directory, int segment) {
+        return new File(directory, String.format("%s%03d%s",
+                            SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /*
+     * Queues the completion of an RTask that scored fraudScores, with
+     * either an rTaskResult or a throwable. Successful completions not
+     * sampled, or arriving while the queue is full, are not audited.
+     * Failed completions are not audited once closed, or if the queue
+     * stays full for FAILURE_WAIT milliseconds.
+     */
+    public void record(List<FraudScore> fraudScores,
+                       RTaskResult rTaskResult,
+                       Throwable throwable) {
+
+        if(rTaskResult != null && rTaskResult.isSuccess()) {
+
+            if(completions.getAndIncrement() % sample != 0) {
+                return;
+            }
+
+            if(!queue.offer(new Entry(fraudScores, OK,
+                                      rTaskResult.getTimeOnCode(),
+                                      rTaskResult.getTimeOnServer(),
+                                      rTaskResult.getTimeOnCall(), null))) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+
+        Entry entry = (rTaskResult != null) ?
+            new Entry(fraudScores, FAILED,
+                      rTaskResult.getTimeOnCode(),
+                      rTaskResult.getTimeOnServer(),
+                      rTaskResult.getTimeOnCall(),
+                      rTaskResult.getFailure()) :
+            new Entry(fraudScores, ERROR, 0L, 0L, 0L,
+                      String.valueOf(throwable));
+
+        try {
+            if(running &&
+               queue.offer(entry, FAILURE_WAIT, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch(InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+        droppedFailures.incrementAndGet();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /*
+     * Writes any queued completions, then flushes the mapped segment.
+     */
+    public void close() {
+
+        running = false;
+        try {
+            writer.join(5000);
+        } catch(InterruptedException iex) {}
+
+        if(mapped != null) {
+            mapped.force();
+        }
+
+        if(dropped.get() > 0) {
+            log.warn("TaskAudit: dropped " + dropped.get() +
+                     " sampled completion(s) while the queue was full.");
+        }
+        if(droppedFailures.get() > 0) {
+            log.warn("TaskAudit: " + droppedFailures.get() + " failed " +
+                     "completion(s) were only logged, not audited.");
+        }
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private void write() {
+
+        while(running || !queue.isEmpty()) {
+
+            try {
+
+                Entry entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(entry == null) {
+                    continue;
+                }
+
+                for(FraudScore fraudScore : entry.fraudScores) {
+                    write(entry, fraudScore);
+                }
+
+            } catch(InterruptedException iex) {
+                break;
+            } catch(Exception ex) {
+                log.warn("TaskAudit: write ex=" + ex);
+            }
+        }
+    }
+
+    private void write(Entry entry, FraudScore fraudScore) throws IOException {
+
+        if(!mapped.hasRemaining()) {
+            mapped.force();
+            segment = (segment + 1) % segments;
+            map(segment);
+        }
+
+        int start = mapped.position();
+
+        mapped.putLong(start + 8, entry.timestamp);
+        mapped.putInt(start + 16, fraudScore.balance);
+        mapped.putInt(start + 20, fraudScore.transactions);
+        mapped.putInt(start + 24, fraudScore.credit);
+        mapped.putInt(start + 28, entry.fraudScores.size());
+        mapped.putDouble(start + 32, fraudScore.score);
+        mapped.putInt(start + 40, (int) entry.timeOnCode);
+        mapped.putInt(start + 44, (int) entry.timeOnServer);
+        mapped.putInt(start + 48, (int) entry.timeOnCall);
+        mapped.put(start + 52, entry.outcome);
+
+        int causeLength = 0;
+        if(entry.cause != null) {
+            byte[] bytes = entry.cause.getBytes("UTF-8");
+            causeLength = Math.min(bytes.length, CAUSE_SIZE);
+            for(int i=0; i<causeLength; i++) {
+                mapped.put(start + CAUSE_OFFSET + i, bytes[i]);
+            }
+        }
+        mapped.put(start + 53, (byte) causeLength);
+
+        /*
+         * Sequence last, so a torn record keeps the lower sequence of
+         * the previous lap and is ignored by AuditDump.
+         */
+        mapped.putLong(start, sequence++);
+        mapped.position(start + RECORD_SIZE);
+    }
+
+    private void map(int index) throws IOException {
+
+        RandomAccessFile file =
+                new RandomAccessFile(segmentFile(directory, index), "rw");
+        try {
+            long size = (long) recordsPerSegment * RECORD_SIZE;
+            file.setLength(size);
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                           0, size);
+        } finally {
+            file.close();
+        }
+    }
+
+    /*
+     * Returns the sequence of the first record in file, or 0.
+     */
+    public static long firstSequence(File file) throws IOException {
+
+        if(!file.exists() || file.length() < RECORD_SIZE) {
+            return 0;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            raf.getChannel().read(buffer, 0);
+            buffer.flip();
+            return buffer.getLong();
+        } finally {
+            raf.close();
+        }
+    }
+}
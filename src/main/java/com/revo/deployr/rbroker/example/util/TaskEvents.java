@@ -0,0 +1,101 @@
+/*
+ * TaskEvents.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Scoring task lifecycle events for Java Flight Recorder.
+ *
+ * This base class discards every event. When the JVM supports Java
+ * Flight Recorder the JfrTaskEvents subclass, built from src/jfr/java,
+ * is loaded instead and emits each event as a JFR event, only when
+ * that event type is enabled in the active recording.
+ */
+package com.revo.deployr.rbroker.example.util;
+
+import org.apache.log4j.Logger;
+
+public class TaskEvents {
+
+    private static Logger log = Logger.getLogger(TaskEvents.class);
+
+    private static final TaskEvents INSTANCE = load();
+
+    public static TaskEvents get() {
+        return INSTANCE;
+    }
+
+    /*
+     * True while task completion events are being recorded, callers
+     * need only capture submit timestamps for queue wait while true.
+     */
+    public boolean isEnabled() {
+        return false;
+    }
+
+    /*
+     * Each event carries the number of accounts scored by the RTask
+     * and the inputs of the first of those accounts. Times are in
+     * milliseconds.
+     */
+
+    public void taskBuilt(int accounts, int balance,
+                          int transactions, int credit) {
+    }
+
+    public void taskSubmitted(int outstandingTasks) {
+    }
+
+    public void taskCompleted(int accounts, int balance,
+                              int transactions, int credit,
+                              long timeOnCode, long timeOnServer,
+                              long timeOnCall, long queueWait) {
+    }
+
+    public void taskFailed(int accounts, int balance,
+                           int transactions, int credit,
+                           String cause) {
+    }
+
+    public void poolBuilt(int requestedPoolSize, int allocatedPoolSize,
+                          boolean resize, long buildTime) {
+    }
+
+    /*
+     * Starts timing a STOMP message send, returning null when message
+     * published events are not being recorded. The result is passed to
+     * messagePublished once the message is sent.
+     */
+    public Object publishStarted() {
+        return null;
+    }
+
+    public void messagePublished(Object publish, String msgType, int scores) {
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static TaskEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            TaskEvents taskEvents = (TaskEvents) Class.forName(
+                "com.revo.deployr.rbroker.example.jfr.JfrTaskEvents")
+                    .newInstance();
+            log.info("Java Flight Recorder task events available.");
+            return taskEvents;
+        } catch(Throwable t) {
+            return new TaskEvents();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * WireEncoding.java
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Compact binary encoding of /topic/fraud messages, for subscriptions
+ * made with an "encoding: binary" header. Decoded in the browser by
+ * js/wire.js.
+ *
+ * STOMP over SockJS only carries text frames, so each binary frame is
+ * sent as a base64 string. Frames are big-endian, varints are unsigned
+ * LEB128 and signed varints are zigzag encoded. The first byte is the
+ * frame type:
+ *
+ * SCORES      - int count, then count 21 byte FraudScores:
+ *               int balance, int transactions, int credit,
+ *               double score, byte success.
+ * STATS       - RuntimeStats, in full.
+ * STATS_DELTA - RuntimeStats, as changes from the previous frame.
+ *               Both are encoded as changes, from an all zero and null
+ *               RuntimeStats in the case of STATS: int field mask, a
+ *               signed varint difference for each changed numeric field
+ *               in NUMERIC_FIELDS order, then, when any other field
+ *               changed, a varint length and UTF-8 JSON object of the
+ *               changed fields.
+ * CLIENTALERT,
+ * CLIENTWARN  - varint length and UTF-8 msg, then varint length plus
+ *               one and UTF-8 cause, or 0 when there is no cause.
+ */
+package com.revo.deployr.rbroker.example.util;
+
+import com.revo.deployr.rbroker.example.model.ClientAlert;
+import com.revo.deployr.rbroker.example.model.ClientMessage;
+import com.revo.deployr.rbroker.example.model.FraudScore;
+import com.revo.deployr.rbroker.example.model.RuntimeStats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WireEncoding {
+
+    public static final byte SCORES = 1;
+    public static final byte STATS = 2;
+    public static final byte STATS_DELTA = 3;
+    public static final byte CLIENTALERT = 4;
+    public static final byte CLIENTWARN = 5;
+
+    public static final int SCORE_SIZE = 21;
+
+    /*
+     * Numeric RuntimeStats fields, in mask bit order. Must match
+     * js/wire.js.
+     */
+    public static final String[] NUMERIC_FIELDS = {
+        "requestedPoolSize", "allocatedPoolSize", "maxConcurrency",
+        "submittedTasks", "successfulTasks", "failedTasks",
+        "outstandingTasks", "rejectedTasks", "circuitRefused",
+        "dispatchQueueDepth", "averageCodeExecution",
+        "averageServerOverhead", "averageNetworkLatency", "nativeScores",
+        "verifiedScores", "mismatchedScores", "cacheHits",
+        "cacheCoalesced", "cacheMisses"
+    };
+
+    /*
+     * Other RuntimeStats fields, sent as JSON when changed.
+     */
+    public static final String[] OBJECT_FIELDS = {
+        "endpoint", "username", "shards", "circuitState", "hedging",
+        "dispatchHandoffPercentiles", "priorityLane", "bulkLane",
+        "codeExecutionPercentiles", "serverOverheadPercentiles",
+        "networkLatencyPercentiles"
+    };
+
+    private static final RuntimeStats EMPTY_STATS = new RuntimeStats();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+                                                            .toCharArray();
+
+    private byte[] buffer = new byte[256];
+    private int length = 0;
+
+    private WireEncoding() {}
+
+    public static String encodeScores(List<FraudScore> fraudScores) {
+
+        WireEncoding wire = new WireEncoding();
+        wire.ensure(5 + fraudScores.size() * SCORE_SIZE);
+        wire.writeByte(SCORES);
+        wire.writeInt(fraudScores.size());
+
+        for(FraudScore fraudScore : fraudScores) {
+            wire.writeInt(fraudScore.balance);
+            wire.writeInt(fraudScore.transactions);
+            wire.writeInt(fraudScore.credit);
+            wire.writeLong(Double.doubleToLongBits(fraudScore.score));
+            wire.writeByte(fraudScore.success ? 1 : 0);
+        }
+
+        return wire.toBase64();
+    }
+
+    /*
+     * Encodes runtimeStats as changes from previous, or in full when
+     * previous is null.
+     */
+    public static String encodeStats(RuntimeStats runtimeStats,
+                                     RuntimeStats previous) {
+
+        long[] current = numeric(runtimeStats);
+        long[] base = numeric((previous != null) ? previous : EMPTY_STATS);
+        Object[] objects = objects(runtimeStats);
+        Object[] baseObjects =
+            objects((previous != null) ? previous : EMPTY_STATS);
+
+        int mask = 0;
+        for(int i=0; i<current.length; i++) {
+            if(current[i] != base[i]) {
+                mask |= 1 << i;
+            }
+        }
+
+        Map<String, Object> changed = new LinkedHashMap<String, Object>();
+        for(int i=0; i<objects.length; i++) {
+            if(objects[i] == null ? baseObjects[i] != null :
+                                    !objects[i].equals(baseObjects[i])) {
+                mask |= 1 << (NUMERIC_FIELDS.length + i);
+                changed.put(OBJECT_FIELDS[i], objects[i]);
+            }
+        }
+
+        WireEncoding wire = new WireEncoding();
+        wire.writeByte((previous != null) ? STATS_DELTA : STATS);
+        wire.writeInt(mask);
+
+        for(int i=0; i<current.length; i++) {
+            if((mask & (1 << i)) != 0) {
+                long delta = current[i] - base[i];
+                wire.writeVarint((delta << 1) ^ (delta >> 63));
+            }
+        }
+
+        if(!changed.isEmpty()) {
+            try {
+                wire.writeString(mapper.writeValueAsString(changed));
+            } catch(Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        return wire.toBase64();
+    }
+
+    public static String encodeClientMessage(ClientMessage clientMessage) {
+
+        WireEncoding wire = new WireEncoding();
+        wire.writeByte((clientMessage instanceof ClientAlert) ?
+                                            CLIENTALERT : CLIENTWARN);
+        wire.writeString(String.valueOf(clientMessage.msg));
+
+        if(clientMessage.cause != null) {
+            byte[] cause = clientMessage.cause.getBytes(UTF8);
+            wire.writeVarint(cause.length + 1);
+            wire.writeBytes(cause);
+        } else {
+            wire.writeVarint(0);
+        }
+
+        return wire.toBase64();
+    }
+
+    /*
+     * Private helper methods.
+     */
+
+    private static long[] numeric(RuntimeStats stats) {
+        return new long[] {
+            stats.requestedPoolSize, stats.allocatedPoolSize,
+            stats.maxConcurrency, stats.submittedTasks,
+            stats.successfulTasks, stats.failedTasks,
+            stats.outstandingTasks, stats.rejectedTasks,
+            stats.circuitRefused, stats.dispatchQueueDepth,
+            stats.averageCodeExecution, stats.averageServerOverhead,
+            stats.averageNetworkLatency, stats.nativeScores,
+            stats.verifiedScores, stats.mismatchedScores,
+            stats.cacheHits, stats.cacheCoalesced, stats.cacheMisses
+        };
+    }
+
+    private static Object[] objects(RuntimeStats stats) {
+        return new Object[] {
+            stats.endpoint, stats.username, stats.shards,
+            stats.circuitState, stats.hedging,
+            stats.dispatchHandoffPercentiles,
+            stats.priorityLane, stats.bulkLane,
+            stats.codeExecutionPercentiles, stats.serverOverheadPercentiles,
+            stats.networkLatencyPercentiles
+        };
+    }
+
+    private void ensure(int size) {
+        if(length + size > buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+                        Math.max(length + size, buffer.length * 2));
+        }
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarint(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private String toBase64() {
+
+        char[] out = new char[((length + 2) / 3) * 4];
+        int o = 0;
+
+        for(int i=0; i<length; i+=3) {
+
+            int b = (buffer[i] & 0xFF) << 16;
+            if(i + 1 < length) b |= (buffer[i + 1] & 0xFF) << 8;
+            if(i + 2 < length) b |= buffer[i + 2] & 0xFF;
+
+            out[o++] = BASE64[(b >>> 18) & 0x3F];
+            out[o++] = BASE64[(b >>> 12) & 0x3F];
+            out[o++] = (i + 1 < length) ? BASE64[(b >>> 6) & 0x3F] : '=';
+            out[o++] = (i + 2 < length) ? BASE64[b & 0x3F] : '=';
+        }
+
+        return new String(out);
+    }
+}
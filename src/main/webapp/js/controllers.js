@@ -18,10 +18,15 @@
  * Initialization:
  *
  * Establishes STOMP connection on /fraudengine, subscribes on /topic/fraud.
+ * The minScore, outcome and statsOnly page URL parameters, if present,
+ * are passed as SUBSCRIBE headers to filter FraudScores on the server.
+ * The encoding=binary page URL parameter subscribes for the compact
+ * binary encoding, decoded by WireDecoder (wire.js).
  *
  * STOMP message events:
  *
  * FRAUDSCORE - RTask result message.
+ * FRAUDSCOREBATCH - Batch of RTask result messages.
  * RUNTIMESTATS - RBroker runtime statistics message.
  * CLIENTALERT - RBroker runtime (error) notification message.
  *
@@ -53,9 +58,14 @@ function fraudController($scope, $http) {
         submittedTasks: 0,
         successfulTasks: 0,
         failedTasks: 0,
+        outstandingTasks: 0,
+        rejectedTasks: 0,
         averageCodeExecution: 0,
         averageServerOverhead: 0,
-        averageNetworkLatency: 0
+        averageNetworkLatency: 0,
+        cacheHits: 0,
+        cacheCoalesced: 0,
+        cacheMisses: 0
     }
 
     $scope.targetTaskThroughput = 0;
@@ -70,32 +80,41 @@ function fraudController($scope, $http) {
         var socket = new SockJS('/fraudengine');
         stompClient = Stomp.over(socket);
 
+        // Server-side subscription filter, from page URL parameters.
+        var filterHeaders = {};
+        angular.forEach(['minScore', 'outcome', 'statsOnly', 'encoding'],
+                                                        function(name) {
+            var match = new RegExp('[?&]' + name + '=([^&#]*)')
+                                            .exec(window.location.search);
+            if(match) {
+                filterHeaders[name] = decodeURIComponent(match[1]);
+            }
+        });
+        var wireDecoder = (filterHeaders.encoding == 'binary') ?
+                                                new WireDecoder() : null;
+
         // Subscribe for events on /topic/fraud.
         stompClient.connect({}, function(frame) {
 
             stompClient.subscribe('/topic/fraud', function(msg){
-                var msgObj = JSON.parse(msg.body);
+                var msgObj = wireDecoder ? wireDecoder.decode(msg.body) :
+                                           JSON.parse(msg.body);
+                if(msgObj == null) {
+                    return;
+                }
 
                 if(msgObj.msgType == "FRAUDSCORE") {
 
-                    var elapsedTime = Date.now() - $scope.startTaskThroughput;
-
                     // $apply to propogate change to model.
                     $scope.$apply(function () {
+                        $scope.addFraudScores([ msgObj ]);
+                    });
+                } else
+                if(msgObj.msgType == "FRAUDSCOREBATCH") {
 
-                        $scope.currentTaskThroughput += 1;
-                        var throughput =
-                            (1000 / elapsedTime) * $scope.currentTaskThroughput;
-                        $scope.secondTaskThroughput = (throughput - (throughput % .01));
-                        $scope.minuteTaskThroughput =
-                            Math.round($scope.secondTaskThroughput * 60);
-
-                        // Discard older fraudScore from fraudScoreResults
-                        // list to prevent browser rendering exhaustion.
-                        if($scope.fraudScoreResults.length > 300) {
-                            $scope.fraudScoreResults.length = 150;
-                        }
-                        $scope.fraudScoreResults.unshift(msgObj);
+                    // $apply to propogate change to model.
+                    $scope.$apply(function () {
+                        $scope.addFraudScores(msgObj.scores);
                     });
                 } else
                 if(msgObj.msgType == "RUNTIMESTATS") {
@@ -117,19 +136,64 @@ function fraudController($scope, $http) {
                         $scope.alertWarnMessage = msgObj.msg;
                     });
                 }
-            });
+            }, filterHeaders);
 
             //
             // Now that the STOMP connection has been established,
-            // initialize initial RBroker pool on application startup.
+            // initialize initial RBroker pool on application startup,
+            // unless a pool is already allocated or warming up.
             //
-            $scope.resizePool();
+            $http.get('/fraud/ready').success(function (data) {
+                $scope.initPool(data);
+            }).error(function (data) {
+                $scope.initPool(data);
+            });
         });
 
         $scope.socketInitialized = true;
 
     } // if $scope.socketInitialized
 
+    //
+    // Records fraudScores, oldest first, and updates throughput.
+    //
+    $scope.addFraudScores = function(fraudScores) {
+
+        var elapsedTime = Date.now() - $scope.startTaskThroughput;
+
+        $scope.currentTaskThroughput += fraudScores.length;
+        var throughput =
+            (1000 / elapsedTime) * $scope.currentTaskThroughput;
+        $scope.secondTaskThroughput = (throughput - (throughput % .01));
+        $scope.minuteTaskThroughput =
+            Math.round($scope.secondTaskThroughput * 60);
+
+        for(var i = 0; i < fraudScores.length; i++) {
+            // Discard older fraudScore from fraudScoreResults
+            // list to prevent browser rendering exhaustion.
+            if($scope.fraudScoreResults.length > 300) {
+                $scope.fraudScoreResults.length = 150;
+            }
+            $scope.fraudScoreResults.unshift(fraudScores[i]);
+        }
+    }
+
+    //
+    // Builds the initial RBroker pool, given the server readiness,
+    // only when no pool is allocated or warming up.
+    //
+    $scope.initPool = function(readiness) {
+        if(readiness && readiness.allocatedPoolSize > 0) {
+            $scope.poolSize = readiness.requestedPoolSize;
+            $scope.brokerInitialized = true;
+        } else
+        if(readiness && readiness.state == "WARMING") {
+            $scope.brokerInitialized = true;
+        } else {
+            $scope.resizePool();
+        }
+    }
+
     //
     // Resize Button Handler:
     //
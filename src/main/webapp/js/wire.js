@@ -0,0 +1,145 @@
+/*
+ * wire.js
+ *
+ * Copyright (C) 2010-2014 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+/*
+ * Java Fraud Detection Example Application
+ *
+ * Decoder for the compact binary /topic/fraud encoding, see
+ * WireEncoding.java for the frame layout.
+ *
+ * new WireDecoder().decode(body) returns the same message object that
+ * JSON.parse(body) returns for the JSON encoding, or null for a
+ * RuntimeStats delta received before the first full RuntimeStats.
+ */
+function WireDecoder() {
+
+    var NUMERIC_FIELDS = [
+        'requestedPoolSize', 'allocatedPoolSize', 'maxConcurrency',
+        'submittedTasks', 'successfulTasks', 'failedTasks',
+        'outstandingTasks', 'rejectedTasks', 'circuitRefused',
+        'dispatchQueueDepth', 'averageCodeExecution',
+        'averageServerOverhead', 'averageNetworkLatency', 'nativeScores',
+        'verifiedScores', 'mismatchedScores', 'cacheHits',
+        'cacheCoalesced', 'cacheMisses'
+    ];
+
+    var OBJECT_FIELDS = [
+        'endpoint', 'username', 'shards', 'circuitState', 'hedging',
+        'dispatchHandoffPercentiles', 'priorityLane', 'bulkLane',
+        'codeExecutionPercentiles', 'serverOverheadPercentiles',
+        'networkLatencyPercentiles'
+    ];
+
+    var stats = null;
+
+    this.decode = function(body) {
+
+        var binary = atob(body);
+        var bytes = new Uint8Array(binary.length);
+        for(var i = 0; i < binary.length; i++) {
+            bytes[i] = binary.charCodeAt(i);
+        }
+        var view = new DataView(bytes.buffer);
+        var pos = 0;
+
+        function readVarint() {
+            var value = 0, scale = 1, b;
+            do {
+                b = bytes[pos++];
+                value += (b & 0x7F) * scale;
+                scale *= 128;
+            } while(b & 0x80);
+            return value;
+        }
+
+        function readString(length) {
+            var s = '';
+            for(var i = 0; i < length; i++) {
+                s += String.fromCharCode(bytes[pos++]);
+            }
+            return decodeURIComponent(escape(s));
+        }
+
+        var type = bytes[pos++];
+
+        if(type == 1) {
+            var count = view.getInt32(pos);
+            var scores = new Array(count);
+            pos += 4;
+            for(var i = 0; i < count; i++) {
+                scores[i] = {
+                    balance: view.getInt32(pos),
+                    transactions: view.getInt32(pos + 4),
+                    credit: view.getInt32(pos + 8),
+                    score: view.getFloat64(pos + 12),
+                    success: bytes[pos + 20] == 1,
+                    msgType: 'FRAUDSCORE'
+                };
+                pos += 21;
+            }
+            return { msgType: 'FRAUDSCOREBATCH', scores: scores };
+        }
+
+        if(type == 2 || type == 3) {
+
+            if(type == 2) {
+                stats = { msgType: 'RUNTIMESTATS' };
+                for(var i = 0; i < NUMERIC_FIELDS.length; i++) {
+                    stats[NUMERIC_FIELDS[i]] = 0;
+                }
+                for(var i = 0; i < OBJECT_FIELDS.length; i++) {
+                    stats[OBJECT_FIELDS[i]] = null;
+                }
+            } else
+            if(stats == null) {
+                return null;
+            }
+
+            var mask = view.getInt32(pos);
+            pos += 4;
+
+            for(var i = 0; i < NUMERIC_FIELDS.length; i++) {
+                if(mask & (1 << i)) {
+                    // Zigzag decode, without 32 bit integer arithmetic.
+                    var n = readVarint();
+                    var delta = (n % 2 == 0) ? n / 2 : -(n + 1) / 2;
+                    stats[NUMERIC_FIELDS[i]] += delta;
+                }
+            }
+
+            if(mask >>> NUMERIC_FIELDS.length) {
+                var changed = JSON.parse(readString(readVarint()));
+                for(var field in changed) {
+                    stats[field] = changed[field];
+                }
+            }
+
+            var copy = {};
+            for(var field in stats) {
+                copy[field] = stats[field];
+            }
+            return copy;
+        }
+
+        if(type == 4 || type == 5) {
+            var msg = readString(readVarint());
+            var causeLength = readVarint();
+            return {
+                msgType: (type == 4) ? 'CLIENTALERT' : 'CLIENTWARN',
+                msg: msg,
+                cause: causeLength ? readString(causeLength - 1) : null
+            };
+        }
+
+        return null;
+    };
+}